@@ -0,0 +1,61 @@
+package edu.ucr.cs166.mechanicshop.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import edu.ucr.cs166.mechanicshop.CountMinSketch;
+import edu.ucr.cs166.mechanicshop.HyperLogLog;
+import edu.ucr.cs166.mechanicshop.SpaceSaving;
+
+/**
+ * This class measures the per-row cost of maintaining the sketches behind
+ * the approximate reports, fed with VIN-like keys.
+ *
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SketchBenchmark{
+	private String[] _vins = new String[4096];
+	private int _next = 0;
+	private HyperLogLog _hyperLogLog;
+	private CountMinSketch _countMin;
+	private SpaceSaving _spaceSaving;
+
+	@Setup
+	public void setup(){
+		for (int i = 0; i < this._vins.length; ++i)
+			this._vins[i] = String.format("VIN%013d", i * 7919L);
+		this._hyperLogLog = new HyperLogLog(10);
+		this._countMin = new CountMinSketch(16384, 5);
+		this._spaceSaving = new SpaceSaving(2048);
+	}
+
+	private String nextVin(){
+		this._next = (this._next + 1) & (this._vins.length - 1);
+		return this._vins[this._next];
+	}
+
+	@Benchmark
+	public void hyperLogLogAdd(){
+		this._hyperLogLog.add(nextVin());
+	}
+
+	@Benchmark
+	public long countMinAddAndEstimate(){
+		String vin = nextVin();
+		this._countMin.add(vin, 1);
+		return this._countMin.estimate(vin);
+	}
+
+	@Benchmark
+	public void spaceSavingAdd(){
+		this._spaceSaving.add(nextVin());
+	}
+}
@@ -0,0 +1,103 @@
+package edu.ucr.cs166.mechanicshop.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import edu.ucr.cs166.mechanicshop.SnapshotReader;
+import edu.ucr.cs166.mechanicshop.SnapshotWriter;
+
+/**
+ * This class measures writing and reading a Service_Request sized
+ * snapshot file.  Set -Dsnapshot=<file> to read an exported table instead
+ * of the generated one.
+ *
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SnapshotBenchmark{
+	private static final int ROWS = 30000;
+	private static final String[] COLUMNS = {"rid", "customer_id", "car_vin", "date", "odometer", "complain"};
+	private static final String TYPES = "IITDIT";
+
+	private File _file;
+	private boolean _generated = false;
+
+	@Setup
+	public void setup() throws IOException {
+		String snapshot = System.getProperty("snapshot");
+		if (snapshot != null){
+			this._file = new File(snapshot);
+			return;
+		}//end if
+		this._file = File.createTempFile("service_request", ".snap");
+		this._generated = true;
+		write(this._file);
+	}
+
+	@TearDown
+	public void tearDown(){
+		if (this._generated) this._file.delete();
+	}
+
+	@Benchmark
+	public long writeSnapshot() throws IOException {
+		File file = File.createTempFile("service_request", ".snap");
+		try{
+			write(file);
+			return file.length();
+		}finally{
+			file.delete();
+		}//end try
+	}
+
+	@Benchmark
+	public long readColumns() throws IOException {
+		SnapshotReader reader = new SnapshotReader(this._file);
+		long bytes = 0;
+		byte[][] columns;
+		while ((columns = reader.nextColumns()) != null){
+			for (byte[] column : columns)
+				bytes += column.length;
+		}//end while
+		reader.close();
+		return bytes;
+	}
+
+	@Benchmark
+	public long readRows() throws IOException {
+		SnapshotReader reader = new SnapshotReader(this._file);
+		long rows = 0;
+		List<List<String>> group;
+		while ((group = reader.nextRows()) != null)
+			rows += group.size();
+		reader.close();
+		return rows;
+	}
+
+	private static void write(File file) throws IOException {
+		SnapshotWriter writer = new SnapshotWriter(file, "Service_Request", COLUMNS, TYPES);
+		byte[][] fields = new byte[COLUMNS.length][];
+		for (int i = 0; i < ROWS; ++i){
+			fields[0] = ByteBuffer.allocate(4).putInt(i).array();
+			fields[1] = ByteBuffer.allocate(4).putInt(i % 500).array();
+			fields[2] = String.format("VIN%013d", i % 5000).getBytes("UTF-8");
+			fields[3] = ByteBuffer.allocate(4).putInt(i % 7000).array();
+			fields[4] = ByteBuffer.allocate(4).putInt(1000 + i % 90000).array();
+			fields[5] = i % 10 == 0 ? null : ("Complaint number " + i).getBytes("UTF-8");
+			writer.addRow(fields);
+		}//end for
+		writer.close();
+	}
+}
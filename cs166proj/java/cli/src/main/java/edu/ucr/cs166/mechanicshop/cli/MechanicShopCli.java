@@ -11,238 +11,53 @@
  */
 
 
-import java.sql.DriverManager;
-import java.sql.Connection;
-import java.sql.Statement;
-import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
-import java.sql.SQLException;
-import java.io.File;
-import java.io.FileReader;
+package edu.ucr.cs166.mechanicshop.cli;
+
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Date;
-import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
+import edu.ucr.cs166.mechanicshop.MechanicShop;
+import edu.ucr.cs166.mechanicshop.ReportSketches;
 
 /**
- * This class defines a simple embedded SQL utility class that is designed to
- * work with PostgreSQL JDBC drivers.
+ * This class defines the console user interface of the mechanic shop.  It
+ * only reads and validates input; all database access goes through
+ * MechanicShop.
  *
  */
 
-public class MechanicShop{
-	//reference to physical database connection
-	private Connection _connection = null;
+public class MechanicShopCli{
+	//percentage of Closed_Request rows sampled by the approximate bill reports
+	static double samplePercent = Double.parseDouble(System.getProperty("report.sample", "10"));
 	static BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
 
-	public MechanicShop(String dbname, String dbport, String user, String passwd) throws SQLException {
-		System.out.print("Connecting to database...");
-		try{
-			// constructs the connection URL
-			String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
-			System.out.println ("Connection URL: " + url + "\n");
-
-			// obtain a physical connection
-	        this._connection = DriverManager.getConnection(url, user, passwd);
-	        System.out.println("Done");
-		}catch(Exception e){
-			System.err.println("Error - Unable to Connect to Database: " + e.getMessage());
-	        System.out.println("Make sure you started postgres on this machine");
-	        System.exit(-1);
-		}
-	}
-
-	/**
-	 * Method to execute an update SQL statement.  Update SQL instructions
-	 * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
-	 *
-	 * @param sql the input SQL string
-	 * @throws java.sql.SQLException when update failed
-	 * */
-	public void executeUpdate (String sql) throws SQLException {
-		// creates a statement object
-		Statement stmt = this._connection.createStatement ();
-
-		// issues the update instruction
-		stmt.executeUpdate (sql);
-
-		// close the instruction
-	    stmt.close ();
-	}//end executeUpdate
-
-	/**
-	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
-	 * method issues the query to the DBMS and outputs the results to
-	 * standard out.
-	 *
-	 * @param query the input query string
-	 * @return the number of rows returned
-	 * @throws java.sql.SQLException when failed to execute the query
-	 */
-	public int executeQueryAndPrintResult (String query) throws SQLException {
-		//creates a statement object
-		Statement stmt = this._connection.createStatement ();
-
-		//issues the query instruction
-		ResultSet rs = stmt.executeQuery (query);
-
-		/*
-		 *  obtains the metadata object for the returned result set.  The metadata
-		 *  contains row and column info.
-		 */
-		ResultSetMetaData rsmd = rs.getMetaData ();
-		int numCol = rsmd.getColumnCount ();
-		int rowCount = 0;
-
-		//iterates through the result set and output them to standard out.
-		boolean outputHeader = true;
-		while (rs.next()){
-			if(outputHeader){
-				for(int i = 1; i <= numCol; i++){
-					System.out.print(rsmd.getColumnName(i) + "\t");
-			    }
-			    System.out.println();
-			    outputHeader = false;
-			}
-			for (int i=1; i<=numCol; ++i)
-				System.out.print (rs.getString (i) + "\t");
-			System.out.println ();
-			++rowCount;
-		}//end while
-		stmt.close ();
-		return rowCount;
-	}
-
-	/**
-	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
-	 * method issues the query to the DBMS and returns the results as
-	 * a list of records. Each record in turn is a list of attribute values
-	 *
-	 * @param query the input query string
-	 * @return the query result as a list of records
-	 * @throws java.sql.SQLException when failed to execute the query
-	 */
-	public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException {
-		//creates a statement object
-		Statement stmt = this._connection.createStatement ();
-
-		//issues the query instruction
-		ResultSet rs = stmt.executeQuery (query);
-
-		/*
-		 * obtains the metadata object for the returned result set.  The metadata
-		 * contains row and column info.
-		*/
-		ResultSetMetaData rsmd = rs.getMetaData ();
-		int numCol = rsmd.getColumnCount ();
-		int rowCount = 0;
-
-		//iterates through the result set and saves the data returned by the query.
-		boolean outputHeader = false;
-		List<List<String>> result  = new ArrayList<List<String>>();
-		while (rs.next()){
-			List<String> record = new ArrayList<String>();
-			for (int i=1; i<=numCol; ++i)
-				record.add(rs.getString (i));
-			result.add(record);
-		}//end while
-		stmt.close ();
-		return result;
-	}//end executeQueryAndReturnResult
-
-	/**
-	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
-	 * method issues the query to the DBMS and returns the number of results
-	 *
-	 * @param query the input query string
-	 * @return the number of rows returned
-	 * @throws java.sql.SQLException when failed to execute the query
-	 */
-	public int executeQuery (String query) throws SQLException {
-		//creates a statement object
-		Statement stmt = this._connection.createStatement ();
-
-		//issues the query instruction
-		ResultSet rs = stmt.executeQuery (query);
-
-		int rowCount = 0;
-
-		//iterates through the result set and count nuber of results.
-		if(rs.next()){
-			rowCount++;
-		}//end while
-		stmt.close ();
-		return rowCount;
-	}
-
-	/**
-	 * Method to fetch the last value from sequence. This
-	 * method issues the query to the DBMS and returns the current
-	 * value of sequence used for autogenerated keys
-	 *
-	 * @param sequence name of the DB sequence
-	 * @return current value of a sequence
-	 * @throws java.sql.SQLException when failed to execute the query
-	 */
-
-	public int getCurrSeqVal(String sequence) throws SQLException {
-		Statement stmt = this._connection.createStatement ();
-
-		ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
-		if (rs.next()) return rs.getInt(1);
-		return -1;
-	}
-
-	/**
-	 * Method to close the physical connection if it is open.
-	 */
-	public void cleanup(){
-		try{
-			if (this._connection != null){
-				this._connection.close ();
-			}//end if
-		}catch (SQLException e){
-	         // ignored.
-		}//end try
-	}//end cleanup
-
 	/**
 	 * The main execution method
 	 *
 	 * @param args the command line arguments this inclues the <mysql|pgsql> <login file>
 	 */
 	public static void main (String[] args) {
-		if (args.length != 3) {
+		if (args.length < 3) {
 			System.err.println (
-				"Usage: " + "java [-classpath <classpath>] " + MechanicShop.class.getName () +
-		            " <dbname> <port> <user>");
+				"Usage: " + "java [-classpath <classpath>] " + MechanicShopCli.class.getName () +
+		            " <dbname> <port> <user> [<replica port> ...]");
 			return;
 		}//end if
 
 		MechanicShop esql = null;
 
 		try{
-			System.out.println("(1)");
-
-			try {
-				Class.forName("org.postgresql.Driver");
-			}catch(Exception e){
-
-				System.out.println("Where is your PostgreSQL JDBC Driver? " + "Include in your library path!");
-				e.printStackTrace();
-				return;
-			}
-
-			System.out.println("(2)");
 			String dbname = args[0];
 			String dbport = args[1];
 			String user = args[2];
+			List<String> replicaPorts = new ArrayList<String>();
+			for (int i = 3; i < args.length; ++i)
+				replicaPorts.add(args[i]);
 
-			esql = new MechanicShop (dbname, dbport, user, "");
+			esql = new MechanicShop (dbname, dbport, replicaPorts, user, "");
 
 			boolean keepon = true;
 			while(keepon){
@@ -259,6 +74,7 @@ public class MechanicShop{
 				System.out.println("9. ListKCarsWithTheMostServices");
 				System.out.println("10. ListCustomersInDescendingOrderOfTheirTotalBill");
 				System.out.println("11. < EXIT");
+				System.out.println("12. ShowStats");
 
 				/*
 				 * FOLLOW THE SPECIFICATION IN THE PROJECT DESCRIPTION
@@ -275,6 +91,7 @@ public class MechanicShop{
 					case 9: ListKCarsWithTheMostServices(esql); break;
 					case 10: ListCustomersInDescendingOrderOfTheirTotalBill(esql); break;
 					case 11: keepon = false; break;
+					case 12: ShowStats(esql); break;
 				}
 			}
 		}catch(Exception e){
@@ -298,7 +115,10 @@ public class MechanicShop{
 		do {
 			System.out.print("Please make your choice: ");
 			try { // read the integer, parse it and break.
-				input = Integer.parseInt(in.readLine());
+				String line = in.readLine();
+				// end of input, e.g. a finished script, exits
+				if (line == null) return 11;
+				input = Integer.parseInt(line);
 				break;
 			}catch (Exception e) {
 				System.out.println("Your input is invalid!");
@@ -308,21 +128,16 @@ public class MechanicShop{
 		return input;
 	}//end readChoice
 
-    public static int mechanicID = 250;
-    public static int requestID = 30000;
-	public static int closingID = 30000;
-    public static int getRequestID(){
-		requestID++;
-		return requestID;
-	}
-	public static int getMechanicID(){
-		mechanicID++;
-		return mechanicID;
-	}
-	public static int getClosingID() {
-		closingID++;
-		return closingID;
-	}
+	public static boolean readApproximate() throws Exception {
+		System.out.print("\nRun exact or approximate report? (e/a): ");
+		String input = in.readLine();
+		// end of input runs the exact report; readChoice then exits
+		while(input != null && !input.equals("e") && !input.equals("a")) {
+			System.out.print("\nInvalid entry. Run exact or approximate report? (e/a): ");
+			input = in.readLine();
+		}
+		return "a".equals(input);
+	}//end readApproximate
 
 	public static boolean isInteger(String s) {
       boolean isValidInteger = false;
@@ -349,7 +164,6 @@ public class MechanicShop{
 		String lname = "";
 		String phone = "";
 		String address = "";
-		int customerID = 601;
 
 		System.out.print("\nEnter first name (MAX 32 CHAR): ");
 		String input = in.readLine();
@@ -383,7 +197,8 @@ public class MechanicShop{
 		}
 		address += input;
 
-		//int id = customerID;
+		// taken last, so it is above rows added while the form was filled in
+		int customerID = esql.getIds().nextCustomerID();
 
 		String customerInfo = "INSERT INTO Customer(id, fname, lname, phone, address) VALUES(" + customerID + ", '" + fname + "', '" + lname + "', '" + phone + "', '" + address + "');";
 
@@ -422,7 +237,7 @@ public class MechanicShop{
 			String years = input;
 
 			String query = "INSERT INTO Mechanic Values (";
-			query += getMechanicID();
+			query += esql.getIds().nextMechanicID();
 			query += ", '";
 			query += fname;
 			query += "', '";
@@ -553,7 +368,7 @@ public class MechanicShop{
 				String complaint = input;
 
 				query = "Insert into Service_Request values(";
-				query += getRequestID();
+				query += esql.getIds().nextRequestID();
 				query += ", '";
 				query += cid;
 				query += "', '";
@@ -564,7 +379,9 @@ public class MechanicShop{
 				query += odometer;
 				query += "', '";
 				query += complaint;
-				query += "'";
+				query += "')";
+
+				esql.executeIntakeUpdate(query);
 			}
 			else{
 				System.out.print("Inserting new car.\n");
@@ -662,7 +479,7 @@ public class MechanicShop{
 			String comments = in.readLine();
 
 			query = "INSERT INTO Closed_Request Values (";
-			query += getClosingID();
+			query += esql.getIds().nextClosingID();
 			query += ", '";
 			query += rid;
 			query += "', '";
@@ -675,7 +492,7 @@ public class MechanicShop{
 			query += bill;
 			query += "')";
 
-			esql.executeUpdate(query);
+			esql.executeIntakeUpdate(query);
 		} catch (Exception e) {
 			System.err.println(e.getMessage());
 		}
@@ -687,7 +504,7 @@ public class MechanicShop{
 			query += "SELECT cu.fname, cu.lname, c.date, c.comment, c.bill ";
 			query += "FROM Closed_Request c, Customer cu, Service_Request r ";
 			query += "WHERE c.bill < 100 AND c.rid=r.rid AND r.customer_id=cu.id;";
-			esql.executeQueryAndPrintResult(query);
+			esql.executeCachedReportQueryAndPrintResult(query, "Closed_Request", "Customer", "Service_Request");
 		}
 		catch (Exception e) {
 			System.err.println(e.getMessage());
@@ -696,13 +513,21 @@ public class MechanicShop{
 
 	public static void ListCustomersWithMoreThan20Cars(MechanicShop esql){//7
 		try {
+			if(readApproximate()) {
+				String ids = esql.getSketches().customersWithMoreCarsThan(20);
+				if(ids.length() > 0) {
+					esql.executeReportQueryAndPrintResult("SELECT fname, lname FROM Customer WHERE id IN (" + ids + ");");
+				}
+				return;
+			}
+
 			String query = "";
 			query += "SELECT cust.fname, cust.lname ";
 			query += "FROM Customer cust, Owns ow ";
 			query += "WHERE cust.id = ow.customer_id ";
 			query += "GROUP BY cust.fname, cust.lname, ow.customer_id ";
 			query += "HAVING COUNT(DISTINCT ow.car_vin) > 20;";
-			esql.executeQueryAndPrintResult(query);
+			esql.executeCachedReportQueryAndPrintResult(query, "Customer", "Owns");
 		} catch (Exception e) {
 			System.err.println(e.getMessage());
 		}
@@ -714,7 +539,7 @@ public class MechanicShop{
 			query += "SELECT c.make, c.model, c.year, s.odometer ";
 			query += "FROM Car c, Service_Request s ";
 			query += "WHERE c.year < 1995 AND c.vin=s.car_vin AND odometer < 50000 ORDER BY c.year;";
-			esql.executeQueryAndPrintResult(query);
+			esql.executeCachedReportQueryAndPrintResult(query, "Car", "Service_Request");
 		}
 		catch (Exception e) {
 			System.err.println(e.getMessage());
@@ -746,6 +571,23 @@ public class MechanicShop{
 				k = Integer.parseInt(input);
 			}
 
+			if(readApproximate()) {
+				ReportSketches sketches = esql.getSketches();
+				if(k > sketches.getTopCapacity()) {
+					System.out.print("\nApproximate mode tracks at most " + sketches.getTopCapacity() + " cars.\n");
+				}
+				String rows = sketches.mostServicedCars(k);
+				if(rows.length() > 0) {
+					String query = "";
+					query += "SELECT ca.make, ca.model, v.count ";
+					query += "FROM Car ca, (VALUES " + rows + ") v(vin, count) ";
+					query += "WHERE ca.vin = v.vin ";
+					query += "ORDER BY v.count DESC;";
+					esql.executeReportQueryAndPrintResult(query);
+				}
+				return;
+			}
+
 			String query = "";
 			query += "SELECT ca.make, ca.model, COUNT(*) ";
 			//query += "AS 'num_requests' ";
@@ -755,7 +597,7 @@ public class MechanicShop{
 			query += "ORDER BY COUNT(*) DESC LIMIT ";
 			query += input;
 			query += ";";
-			esql.executeQueryAndPrintResult(query);
+			esql.executeCachedReportQueryAndPrintResult(query, "Car", "Service_Request");
 		} catch(Exception e) {
 			System.err.println(e.getMessage());
 		}
@@ -763,15 +605,34 @@ public class MechanicShop{
 
 	public static void ListCustomersInDescendingOrderOfTheirTotalBill(MechanicShop esql){//10
 		try{
+			if(readApproximate()) {
+				// Horvitz-Thompson estimate of each total over a Bernoulli sample, err is the 95% bound
+				double q = samplePercent / 100;
+				String query = "";
+				query += "SELECT c.fname , c.lname, tb, err ";
+				query += "FROM Customer c, ";
+				query += "(SELECT s.customer_id, ROUND(SUM(cl.bill) / " + q + ") tb, ";
+				query += "ROUND(1.96 * SQRT((1 - " + q + ") * SUM(cl.bill::float8 * cl.bill)) / " + q + ") err ";
+				query += "FROM Service_Request s, Closed_Request cl TABLESAMPLE BERNOULLI (" + samplePercent + ") WHERE s.rid=cl.rid GROUP BY s.customer_id) te ";
+				query += "WHERE c.id=te.customer_id ORDER BY te.tb DESC;";
+				esql.executeReportQueryAndPrintResult(query);
+				return;
+			}
+
 		    String query = "";
 		    query += "SELECT c.fname , c.lname, tb ";
 		    query += "FROM Customer c, ";
 		    query += "(SELECT s.customer_id, SUM(cl.bill) tb FROM Service_Request s, Closed_Request cl WHERE s.rid=cl.rid GROUP BY s.customer_id) te ";
 		    query += "WHERE c.id=te.customer_id ORDER BY te.tb DESC;";
-			esql.executeQueryAndPrintResult(query);
+			esql.executeCachedReportQueryAndPrintResult(query, "Customer", "Service_Request", "Closed_Request");
 		} catch(Exception e) {
 			System.err.println(e.getMessage());
 		}
 	}
 
+	public static void ShowStats(MechanicShop esql){//12
+		System.out.println(esql.getReportCacheStats());
+		System.out.println(esql.getIntakeStats());
+	}
+
 }
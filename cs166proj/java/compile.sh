@@ -1,3 +1,4 @@
 #! /bin/bash
-rm -rf bin/*.class
-javac -cp ".;lib/postgresql-42.1.4.jar;" src/MechanicShop.java -d bin/
+# Builds cli/target/mechanicshop.jar and its class data sharing archive
+cd "$(dirname "$0")"
+mvn -B -q package
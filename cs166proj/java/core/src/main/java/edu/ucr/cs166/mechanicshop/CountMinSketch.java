@@ -0,0 +1,89 @@
+package edu.ucr.cs166.mechanicshop;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * This class defines a Count-Min sketch.  It keeps depth rows of width
+ * counters and never underestimates: the estimate of an item exceeds its
+ * true count by at most 2N / width with probability 1 - 2^-depth, where N
+ * is the total count added.
+ *
+ */
+
+public class CountMinSketch{
+	private long[][] _counts;
+	private int _width;
+
+	public CountMinSketch(int width, int depth){
+		this._width = width;
+		this._counts = new long[depth][width];
+	}
+
+	/**
+	 * Method to add an occurrence count for an item.
+	 *
+	 * @param item the item seen
+	 * @param count the number of occurrences
+	 */
+	public void add(String item, long count){
+		long hash = HyperLogLog.hash64(item);
+		for (int row = 0; row < this._counts.length; ++row)
+			this._counts[row][bucket(hash, row)] += count;
+	}//end add
+
+	/**
+	 * Method to estimate how often an item was added.
+	 *
+	 * @param item the item to look up
+	 * @return an upper bound on the number of occurrences of the item
+	 */
+	public long estimate(String item){
+		long hash = HyperLogLog.hash64(item);
+		long min = Long.MAX_VALUE;
+		for (int row = 0; row < this._counts.length; ++row)
+			min = Math.min(min, this._counts[row][bucket(hash, row)]);
+		return min;
+	}//end estimate
+
+	/**
+	 * Method to save the sketch.
+	 *
+	 * @param out the stream to write to
+	 * @throws java.io.IOException when the stream cannot be written
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeInt(this._counts.length);
+		out.writeInt(this._width);
+		for (long[] row : this._counts)
+			for (long count : row)
+				out.writeLong(count);
+	}//end write
+
+	/**
+	 * Method to load a sketch saved by write.
+	 *
+	 * @param in the stream to read from
+	 * @return the sketch
+	 * @throws java.io.IOException when the stream is truncated or corrupt
+	 */
+	public static CountMinSketch read(DataInputStream in) throws IOException {
+		int depth = in.readInt();
+		int width = in.readInt();
+		if (depth < 1 || depth > 64 || width < 1 || width > (1 << 24))
+			throw new IOException("Bad Count-Min dimensions " + depth + " x " + width);
+		CountMinSketch sketch = new CountMinSketch(width, depth);
+		for (long[] row : sketch._counts)
+			for (int i = 0; i < width; ++i)
+				row[i] = in.readLong();
+		return sketch;
+	}//end read
+
+	// derives one independent-enough bucket per row from the two halves of the hash
+	private int bucket(long hash, int row){
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		return ((h1 + row * h2) & Integer.MAX_VALUE) % this._width;
+	}//end bucket
+}
@@ -0,0 +1,157 @@
+package edu.ucr.cs166.mechanicshop;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * This class defines a HyperLogLog sketch that estimates the number of
+ * distinct strings added to it using 2^precision one-byte registers.  The
+ * relative standard error is about 1.04 / sqrt(2^precision).
+ *
+ * Small sets are kept exactly, as the sorted hashes of their values, and
+ * only switch to the registers once the hashes would take as much memory.
+ * Most sketches count a handful of values, so they stay a few dozen bytes.
+ *
+ */
+
+public class HyperLogLog{
+	//one register per bucket, holding the longest run of leading zeros seen; null while sparse
+	private byte[] _registers = null;
+	//sorted distinct hashes while the set is small, null once the registers are used
+	private long[] _hashes = new long[4];
+	private int _size = 0;
+	private int _precision;
+
+	public HyperLogLog(int precision){
+		this._precision = precision;
+	}
+
+	/**
+	 * Method to add a value to the sketch.
+	 *
+	 * @param value the value to count
+	 */
+	public void add(String value){
+		long hash = hash64(value);
+		if (this._registers != null){
+			addToRegisters(hash);
+			return;
+		}//end if
+
+		int position = Arrays.binarySearch(this._hashes, 0, this._size, hash);
+		if (position >= 0) return;
+		position = -position - 1;
+		if (this._size == this._hashes.length)
+			this._hashes = Arrays.copyOf(this._hashes, 2 * this._size);
+		System.arraycopy(this._hashes, position, this._hashes, position + 1, this._size - position);
+		this._hashes[position] = hash;
+		++this._size;
+
+		// eight bytes per hash against one per register
+		if (this._size > (1 << this._precision) / 8){
+			this._registers = new byte[1 << this._precision];
+			for (int i = 0; i < this._size; ++i)
+				addToRegisters(this._hashes[i]);
+			this._hashes = null;
+		}//end if
+	}//end add
+
+	private void addToRegisters(long hash){
+		int bucket = (int) (hash >>> (64 - this._precision));
+		// the guard bit keeps the rank bounded when the remaining bits are all zero
+		long rest = (hash << this._precision) | (1L << (this._precision - 1));
+		byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+		if (rank > this._registers[bucket]) this._registers[bucket] = rank;
+	}//end addToRegisters
+
+	/**
+	 * Method to estimate the number of distinct values added so far.  Sets
+	 * still kept as hashes are counted exactly; small cardinalities beyond
+	 * that use linear counting, which is close to exact.
+	 *
+	 * @return the estimated number of distinct values
+	 */
+	public long estimate(){
+		if (this._registers == null) return this._size;
+		int m = this._registers.length;
+		double sum = 0;
+		int zeros = 0;
+		for (int i = 0; i < m; ++i){
+			sum += 1.0 / (1L << this._registers[i]);
+			if (this._registers[i] == 0) ++zeros;
+		}//end for
+		double alpha = 0.7213 / (1 + 1.079 / m);
+		double estimate = alpha * m * m / sum;
+		if (estimate <= 2.5 * m && zeros > 0)
+			estimate = m * Math.log((double) m / zeros);
+		return Math.round(estimate);
+	}//end estimate
+
+	/**
+	 * Method to save the sketch.
+	 *
+	 * @param out the stream to write to
+	 * @throws java.io.IOException when the stream cannot be written
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeByte(this._precision);
+		if (this._registers != null){
+			out.writeInt(-1);
+			out.write(this._registers);
+			return;
+		}//end if
+		out.writeInt(this._size);
+		for (int i = 0; i < this._size; ++i)
+			out.writeLong(this._hashes[i]);
+	}//end write
+
+	/**
+	 * Method to load a sketch saved by write.
+	 *
+	 * @param in the stream to read from
+	 * @return the sketch
+	 * @throws java.io.IOException when the stream is truncated or corrupt
+	 */
+	public static HyperLogLog read(DataInputStream in) throws IOException {
+		int precision = in.readByte();
+		if (precision < 4 || precision > 18) throw new IOException("Bad HyperLogLog precision " + precision);
+		HyperLogLog sketch = new HyperLogLog(precision);
+		int size = in.readInt();
+		if (size < 0){
+			sketch._registers = new byte[1 << precision];
+			in.readFully(sketch._registers);
+			return sketch;
+		}//end if
+		if (size > (1 << precision) / 8) throw new IOException("Bad HyperLogLog size " + size);
+		sketch._hashes = new long[Math.max(4, size)];
+		for (int i = 0; i < size; ++i){
+			sketch._hashes[i] = in.readLong();
+			if (i > 0 && sketch._hashes[i] <= sketch._hashes[i - 1]) throw new IOException("Unsorted HyperLogLog hashes");
+		}//end for
+		sketch._size = size;
+		return sketch;
+	}//end read
+
+	/**
+	 * Method to hash a string to 64 bits (FNV-1a followed by the MurmurHash3
+	 * finalizer so that every output bit depends on every input character).
+	 *
+	 * @param value the string to hash
+	 * @return the 64 bit hash
+	 */
+	static long hash64(String value){
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); ++i){
+			h ^= value.charAt(i);
+			h *= 0x100000001b3L;
+		}//end for
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}//end hash64
+}
@@ -0,0 +1,53 @@
+package edu.ucr.cs166.mechanicshop;
+
+import java.sql.SQLException;
+
+/**
+ * This class hands out the ids of new customers, mechanics, service
+ * requests and closed requests.  Every id is one above both the largest id
+ * in its table and the last id handed out by this process, so ids stay
+ * unique across restarts and across the threads of one process.
+ *
+ * Separate processes only see each other's committed rows: two desks
+ * asking at the same time can get the same id, and the second insert then
+ * fails with a duplicate key error instead of overwriting anything.
+ *
+ */
+
+public class IdGenerator{
+	private MechanicShop _esql;
+	private int _customerID = 0;
+	private int _mechanicID = 0;
+	private int _requestID = 0;
+	private int _closingID = 0;
+
+	public IdGenerator(MechanicShop esql){
+		this._esql = esql;
+	}
+
+	public synchronized int nextCustomerID() throws SQLException {
+		this._customerID = next(this._customerID, "SELECT MAX(id) FROM Customer;");
+		return this._customerID;
+	}
+
+	public synchronized int nextMechanicID() throws SQLException {
+		this._mechanicID = next(this._mechanicID, "SELECT MAX(id) FROM Mechanic;");
+		return this._mechanicID;
+	}
+
+	public synchronized int nextRequestID() throws SQLException {
+		this._requestID = next(this._requestID, "SELECT MAX(rid) FROM Service_Request;");
+		return this._requestID;
+	}
+
+	public synchronized int nextClosingID() throws SQLException {
+		this._closingID = next(this._closingID, "SELECT MAX(wid) FROM Closed_Request;");
+		return this._closingID;
+	}
+
+	// the primary key index answers MAX without a scan
+	private int next(int last, String query) throws SQLException {
+		String max = this._esql.executeQueryAndReturnResult(query).get(0).get(0);
+		return Math.max(last, max == null ? 0 : Integer.parseInt(max)) + 1;
+	}//end next
+}
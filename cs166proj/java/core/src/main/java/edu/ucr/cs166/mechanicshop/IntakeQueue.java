@@ -0,0 +1,410 @@
+package edu.ucr.cs166.mechanicshop;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class defines the intake pipeline for service request writes.
+ * Desks enqueue already validated statements into bounded lock-free ring
+ * buffers (one stripe per group of producer threads, so producers rarely
+ * contend on the same cursor).  A single writer thread drains the stripes
+ * and commits each batch in one transaction, so a batch pays for one WAL
+ * flush instead of one per request.
+ *
+ * With WAIT_FOR_COMMIT the caller blocks until its statement committed;
+ * with FIRE_AND_FORGET it returns once the statement is queued and only
+ * blocks while its stripe is full.  A fire-and-forget failure is kept for
+ * the thread that submitted it and thrown from that thread's next sync.
+ *
+ * Once the writer thread has stopped, because the queue was closed or
+ * because it died, every request it did not commit fails, including those
+ * offered after it made its last pass; no caller is left waiting.
+ *
+ * Batches only form from threads of the same process, since every
+ * process has its own queue and writer connection.  Desks running as
+ * separate CLI processes share WAL flushes through asynchronous commits
+ * instead (intake.durability=async, see MechanicShop.executeIntakeUpdate).
+ *
+ */
+
+public class IntakeQueue{
+	public enum Durability { WAIT_FOR_COMMIT, FIRE_AND_FORGET }
+
+	static class Request{
+		String sql;
+		Session session;
+		CompletableFuture<Void> done = new CompletableFuture<Void>();
+	}
+
+	/**
+	 * The fire-and-forget writes of one producer thread.  The writer
+	 * completes a thread's requests in order, so once the last one is done
+	 * every failure before it has been recorded.
+	 */
+	private static class Session{
+		volatile Request last;
+		volatile SQLException failure;
+	}
+
+	/**
+	 * Bounded multi-producer, single-consumer ring buffer.  Each slot has a
+	 * sequence number telling whether it is free for the producer at a
+	 * position or filled for the consumer.
+	 */
+	static class RingBuffer{
+		private AtomicReferenceArray<Request> _slots;
+		private AtomicLongArray _sequences;
+		private AtomicLong _tail = new AtomicLong();
+		//only advanced by the writer thread
+		private volatile long _head = 0;
+		private int _mask;
+
+		RingBuffer(int capacity){
+			this._slots = new AtomicReferenceArray<Request>(capacity);
+			this._sequences = new AtomicLongArray(capacity);
+			this._mask = capacity - 1;
+			for (int i = 0; i < capacity; ++i)
+				this._sequences.set(i, i);
+		}
+
+		boolean offer(Request request){
+			long pos = this._tail.get();
+			while (true){
+				int slot = (int) (pos & this._mask);
+				long diff = this._sequences.get(slot) - pos;
+				if (diff == 0){
+					if (this._tail.compareAndSet(pos, pos + 1)){
+						this._slots.set(slot, request);
+						this._sequences.set(slot, pos + 1);
+						return true;
+					}//end if
+					pos = this._tail.get();
+				}else if (diff < 0){
+					return false;
+				}else{
+					pos = this._tail.get();
+				}//end if
+			}//end while
+		}//end offer
+
+		Request poll(){
+			long pos = this._head;
+			int slot = (int) (pos & this._mask);
+			if (this._sequences.get(slot) != pos + 1) return null;
+			Request request = this._slots.get(slot);
+			this._slots.set(slot, null);
+			this._sequences.set(slot, pos + this._mask + 1);
+			this._head = pos + 1;
+			return request;
+		}//end poll
+
+		long size(){
+			return Math.max(0, this._tail.get() - this._head);
+		}
+	}
+
+	private MechanicShop _esql;
+	private Connection _connection;
+	private Durability _durability;
+	private RingBuffer[] _stripes;
+	private int _maxBatch;
+	private Thread _writer;
+	//the requests the writer took from the stripes and has not finished yet
+	private List<Request> _batch = new ArrayList<Request>();
+	private volatile boolean _running = true;
+	//set once the writer thread has exited; it takes nothing from the stripes after that
+	private volatile boolean _stopped = false;
+	private ThreadLocal<Session> _sessions = new ThreadLocal<Session>(){
+		protected Session initialValue(){
+			return new Session();
+		}
+	};
+
+	//metrics; the max and total fields are only written by the writer thread
+	private LongAdder _submitted = new LongAdder();
+	private volatile long _committed = 0;
+	private volatile long _failed = 0;
+	private volatile long _batches = 0;
+	private volatile long _maxBatchSize = 0;
+	private volatile long _maxDepth = 0;
+	private volatile long _commitNanos = 0;
+	private volatile long _maxCommitNanos = 0;
+
+	/**
+	 * Creates the queue and starts its writer thread.
+	 *
+	 * @param esql notified of every committed statement
+	 * @param connection the connection the writer commits on, owned by the queue
+	 * @param durability whether callers wait for their commit
+	 * @param stripes the number of ring buffers, rounded up to a power of two
+	 * @param capacity the size of each ring buffer, rounded up to a power of two
+	 * @param maxBatch the most statements committed in one transaction
+	 * @throws java.sql.SQLException when the connection cannot be configured
+	 */
+	public IntakeQueue(MechanicShop esql, Connection connection, Durability durability, int stripes, int capacity, int maxBatch) throws SQLException {
+		// stripes and slots are picked with bit masks
+		stripes = powerOfTwoAtLeast("intake.stripes", stripes);
+		capacity = powerOfTwoAtLeast("intake.capacity", capacity);
+		if (maxBatch < 1) throw new IllegalArgumentException("intake.batch must be positive: " + maxBatch);
+
+		this._esql = esql;
+		this._connection = connection;
+		this._connection.setAutoCommit(false);
+		this._durability = durability;
+		this._maxBatch = maxBatch;
+		this._stripes = new RingBuffer[stripes];
+		for (int i = 0; i < stripes; ++i)
+			this._stripes[i] = new RingBuffer(capacity);
+
+		this._writer = new Thread(new Runnable(){
+			public void run(){
+				try{
+					writeLoop();
+				}finally{
+					stop();
+				}//end try
+			}
+		}, "intake-writer");
+		this._writer.setDaemon(true);
+		this._writer.start();
+	}
+
+	/**
+	 * Method to queue a write statement.  The calling thread always uses the
+	 * same stripe, so its statements commit in the order it submitted them.
+	 *
+	 * @param sql the INSERT, UPDATE or DELETE statement
+	 * @throws java.sql.SQLException when waiting for the commit and it failed
+	 */
+	public void submit(String sql) throws SQLException {
+		if (!this._running) throw new SQLException("Intake queue is closed");
+		Request request = new Request();
+		request.sql = sql;
+		request.session = this._sessions.get();
+
+		RingBuffer stripe = this._stripes[(int) (Thread.currentThread().getId() & (this._stripes.length - 1))];
+		// backpressure: wait for the writer to free a slot
+		for (int spins = 0; !stripe.offer(request); ++spins){
+			if (this._stopped) throw new SQLException("Intake queue is closed");
+			if (spins < 100) Thread.yield();
+			else LockSupport.parkNanos(100000);
+		}//end for
+		this._submitted.increment();
+		LockSupport.unpark(this._writer);
+		// the writer may have made its last pass before the offer
+		if (this._stopped) abandon();
+
+		if (this._durability == Durability.WAIT_FOR_COMMIT){
+			await(request);
+		}else{
+			request.session.last = request;
+		}//end if
+	}//end submit
+
+	/**
+	 * Method to wait until every statement the calling thread queued has
+	 * been committed or has failed.  Callers use it before reading, so they
+	 * see their own fire-and-forget writes.
+	 *
+	 * @throws java.sql.SQLException the first of the thread's queued writes
+	 * that failed since the last sync, with later failures chained to it
+	 */
+	public void sync() throws SQLException {
+		Session session = this._sessions.get();
+		Request last = session.last;
+		if (last == null) return;
+		try{
+			await(last);
+		}catch (SQLException e){
+			// recorded in the session with the earlier failures
+		}//end try
+		session.last = null;
+
+		SQLException failure = session.failure;
+		session.failure = null;
+		if (failure != null) throw failure;
+	}//end sync
+
+	private static void await(Request request) throws SQLException {
+		try{
+			request.done.get();
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for commit");
+		}catch (ExecutionException e){
+			throw (SQLException) e.getCause();
+		}//end try
+	}//end await
+
+	/**
+	 * Method to commit everything still queued, stop the writer and close
+	 * its connection.
+	 */
+	public void close(){
+		this._running = false;
+		LockSupport.unpark(this._writer);
+		try{
+			this._writer.join();
+			this._connection.close();
+		}catch (Exception e){
+			// ignored.
+		}//end try
+	}//end close
+
+	/**
+	 * Method to describe the queue depth, batch sizes and commit latency.
+	 *
+	 * @return a printable summary
+	 */
+	public String getStats(){
+		long depth = 0;
+		for (RingBuffer stripe : this._stripes)
+			depth += stripe.size();
+		long batches = this._batches;
+		return "Intake queue (" + this._durability + "): depth " + depth + ", max depth " + this._maxDepth + "\n"
+			+ "  submitted " + this._submitted.sum() + ", committed " + this._committed + ", failed " + this._failed + "\n"
+			+ "  batches " + batches + ", avg batch " + (batches == 0 ? 0 : (this._committed + this._failed) / batches)
+			+ ", max batch " + this._maxBatchSize + "\n"
+			+ "  avg commit " + (batches == 0 ? 0 : this._commitNanos / batches / 1000) + " us"
+			+ ", max commit " + this._maxCommitNanos / 1000 + " us";
+	}//end getStats
+
+	private void writeLoop(){
+		List<Request> batch = this._batch;
+		while (true){
+			long depth = 0;
+			for (RingBuffer stripe : this._stripes)
+				depth += stripe.size();
+			this._maxDepth = Math.max(this._maxDepth, depth);
+
+			// take from every stripe in turn so no desk starves the others
+			boolean took = true;
+			while (took && batch.size() < this._maxBatch){
+				took = false;
+				for (RingBuffer stripe : this._stripes){
+					if (batch.size() == this._maxBatch) break;
+					Request request = stripe.poll();
+					if (request != null){
+						batch.add(request);
+						took = true;
+					}//end if
+				}//end for
+			}//end while
+
+			if (batch.isEmpty()){
+				if (!this._running) return;
+				LockSupport.parkNanos(1000000);
+				continue;
+			}//end if
+			commit(batch);
+			batch.clear();
+		}//end while
+	}//end writeLoop
+
+	private void commit(List<Request> batch){
+		long start = System.nanoTime();
+		try{
+			Statement stmt = this._connection.createStatement();
+			for (Request request : batch)
+				stmt.addBatch(request.sql);
+			stmt.executeBatch();
+			stmt.close();
+			this._connection.commit();
+			finish(batch);
+		}catch (SQLException e){
+			// one bad statement must not fail the rest of the batch, so retry them one by one
+			rollback();
+			List<Request> committed = new ArrayList<Request>();
+			for (Request request : batch){
+				try{
+					Statement stmt = this._connection.createStatement();
+					stmt.executeUpdate(request.sql);
+					stmt.close();
+					this._connection.commit();
+					committed.add(request);
+				}catch (SQLException failure){
+					rollback();
+					fail(request, failure);
+				}//end try
+			}//end for
+			finish(committed);
+		}//end try
+
+		long elapsed = System.nanoTime() - start;
+		++this._batches;
+		this._commitNanos += elapsed;
+		this._maxCommitNanos = Math.max(this._maxCommitNanos, elapsed);
+		this._maxBatchSize = Math.max(this._maxBatchSize, batch.size());
+	}//end commit
+
+	// publishes committed statements before releasing their callers, so they read their own writes
+	private void finish(List<Request> committed){
+		if (committed.isEmpty()) return;
+		for (Request request : committed)
+			this._esql.noteWrite(request.sql);
+		try{
+			this._esql.recordWritePosition(this._connection);
+		}catch (SQLException e){
+			// the writes committed; only the replica position was not recorded.
+		}//end try
+		// ends the transaction the position query opened
+		rollback();
+		for (Request request : committed){
+			++this._committed;
+			request.done.complete(null);
+		}//end for
+	}//end finish
+
+	private void fail(Request request, SQLException failure){
+		++this._failed;
+		if (this._durability == Durability.FIRE_AND_FORGET){
+			Session session = request.session;
+			if (session.failure == null) session.failure = failure;
+			else session.failure.setNextException(failure);
+		}//end if
+		request.done.completeExceptionally(failure);
+	}//end fail
+
+	// runs on the writer thread as it exits, normally or from an unchecked exception
+	private void stop(){
+		this._running = false;
+		this._stopped = true;
+		for (Request request : this._batch){
+			if (!request.done.isDone()) fail(request, new SQLException("Intake writer stopped before committing: " + request.sql));
+		}//end for
+		this._batch.clear();
+		abandon();
+	}//end stop
+
+	// fails whatever is left in the stripes; the lock makes its callers take turns as the single consumer
+	private synchronized void abandon(){
+		for (RingBuffer stripe : this._stripes){
+			for (Request request = stripe.poll(); request != null; request = stripe.poll())
+				fail(request, new SQLException("Intake queue is closed: " + request.sql));
+		}//end for
+	}//end abandon
+
+	private static int powerOfTwoAtLeast(String name, int value){
+		if (value < 1 || value > (1 << 30))
+			throw new IllegalArgumentException(name + " must be between 1 and " + (1 << 30) + ": " + value);
+		return value == 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+	}//end powerOfTwoAtLeast
+
+	private void rollback(){
+		try{
+			this._connection.rollback();
+		}catch (SQLException e){
+			// ignored.
+		}//end try
+	}//end rollback
+}
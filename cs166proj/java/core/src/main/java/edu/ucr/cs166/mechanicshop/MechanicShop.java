@@ -0,0 +1,723 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+package edu.ucr.cs166.mechanicshop;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.DriverManager;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+/**
+ * This class defines a simple embedded SQL utility class that is designed to
+ * work with PostgreSQL JDBC drivers.  Connections are opened on first use,
+ * so the driver is only loaded once a statement actually runs.
+ *
+ */
+
+public class MechanicShop{
+	//reference to physical database connection, opened on first use
+	private Connection _connection = null;
+	//connection settings, kept to open connections lazily
+	private String _url;
+	private String _user;
+	private String _passwd;
+	//URLs of the streaming replicas, connected on the first report
+	private List<String> _replicaUrls = new ArrayList<String>();
+	private boolean _replicasOpened = false;
+	//group-commit pipeline for service request writes, started on first use
+	private IntakeQueue _intake = null;
+	//read-only connections to streaming replicas, used for report queries
+	private List<Connection> _replicas = new ArrayList<Connection>();
+	//next replica to try, so report load is spread over the replicas
+	private int _nextReplica = 0;
+	//WAL position of the last write made through this session, null before the first write
+	private volatile String _lastWriteLsn = null;
+	//replicas lagging more than this many seconds behind the primary are skipped
+	private double _maxReplicaLag = Double.parseDouble(System.getProperty("replica.maxlag", "5"));
+	//replicas whose replay position is more than this many WAL bytes behind the primary are skipped
+	private long _maxReplicaBytes = Long.parseLong(System.getProperty("replica.maxbytes", "1048576"));
+	//sketches for the approximate reports, loaded on first use
+	private ReportSketches _sketches = null;
+	//where the sketches are kept between runs, empty to rebuild them every run
+	private String _sketchFile = System.getProperty("sketch.file", "mechanicshop.sketches");
+	//results of exact reports, invalidated through per-table version counters
+	private ReportCache _reportCache = new ReportCache(Long.parseLong(System.getProperty("report.cache.bytes", "8388608")));
+	//table written by an INSERT, UPDATE or DELETE statement
+	private static final Pattern WRITTEN_TABLE = Pattern.compile("^\\s*(?:INSERT\\s+INTO|UPDATE|DELETE\\s+FROM)\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
+	//hands out the ids of new mechanics, service requests and closed requests
+	private IdGenerator _ids = new IdGenerator(this);
+
+	public MechanicShop(String dbname, String dbport, String user, String passwd) {
+		this(dbname, dbport, new ArrayList<String>(), user, passwd);
+	}
+
+	public MechanicShop(String dbname, String dbport, List<String> replicaPorts, String user, String passwd) {
+		// constructs the connection URLs
+		this._url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
+		this._user = user;
+		this._passwd = passwd;
+		for (String replicaPort : replicaPorts)
+			this._replicaUrls.add("jdbc:postgresql://localhost:" + replicaPort + "/" + dbname);
+	}
+
+	public IdGenerator getIds() {
+		return this._ids;
+	}
+
+	/**
+	 * Method to return the physical connection to the primary, connecting on
+	 * the first call.
+	 *
+	 * @return the primary connection
+	 * @throws java.sql.SQLException when unable to connect
+	 */
+	private synchronized Connection connection () throws SQLException {
+		if (this._connection == null){
+			try{
+				this._connection = DriverManager.getConnection(this._url, this._user, this._passwd);
+			}catch (SQLException e){
+				throw new SQLException("Unable to Connect to Database " + this._url + ": " + e.getMessage()
+					+ "\nMake sure you started postgres on this machine", e);
+			}//end try
+
+			// the table_changed triggers of create.sql report writes made by other clients
+			Statement listen = this._connection.createStatement ();
+			listen.execute ("LISTEN table_changed");
+			listen.execute ("LISTEN table_truncated");
+			listen.close ();
+		}//end if
+		return this._connection;
+	}//end connection
+
+	/**
+	 * Method to return the replica connections, connecting on the first
+	 * call.  Replicas are optional; those that cannot be reached are left
+	 * out and reports fall back to the primary.
+	 *
+	 * @return the read-only replica connections
+	 */
+	private synchronized List<Connection> replicas () {
+		if (!this._replicasOpened){
+			this._replicasOpened = true;
+			for (String url : this._replicaUrls){
+				try{
+					Connection replica = DriverManager.getConnection(url, this._user, this._passwd);
+					replica.setReadOnly(true);
+					this._replicas.add(replica);
+				}catch(Exception e){
+					System.err.println("Warning - Unable to Connect to Replica " + url + ": " + e.getMessage());
+				}
+			}//end for
+		}//end if
+		return this._replicas;
+	}//end replicas
+
+	/**
+	 * Method to execute an update SQL statement.  Update SQL instructions
+	 * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
+	 *
+	 * @param sql the input SQL string
+	 * @throws java.sql.SQLException when update failed
+	 * */
+	public void executeUpdate (String sql) throws SQLException {
+		awaitIntake ();
+
+		// creates a statement object
+		Statement stmt = connection ().createStatement ();
+
+		// issues the update instruction
+		stmt.executeUpdate (sql);
+
+		// close the instruction
+	    stmt.close ();
+
+		noteWrite (sql);
+		recordWritePosition (connection ());
+	}//end executeUpdate
+
+	/**
+	 * Method to execute a service request write.  The intake.durability
+	 * property picks how:
+	 *
+	 * "direct" (the default) runs it as executeUpdate does.
+	 *
+	 * "async" runs it the same way but commits with synchronous_commit off:
+	 * the commit returns before its WAL record is flushed, and the server's
+	 * WAL writer flushes the commits of every desk process together.  A
+	 * failing write still throws here; a server crash may lose the writes
+	 * of the last few hundred milliseconds, but never leaves a partial one.
+	 *
+	 * "queue" and "queue-async" send it through the intake queue, which
+	 * group-commits the writes of all threads of this process, and return
+	 * after the write committed or as soon as it is queued.  They only pay
+	 * off when one process runs several desks as threads.  A queued write
+	 * that fails in queue-async mode is thrown from the next read or write
+	 * of the same thread, which also waits for the queued writes so it
+	 * sees them.
+	 *
+	 * @param sql the input SQL string
+	 * @throws java.sql.SQLException when the write failed and the caller waits for it
+	 */
+	public void executeIntakeUpdate (String sql) throws SQLException {
+		String mode = System.getProperty("intake.durability", "direct");
+		if (mode.equals("direct")){
+			executeUpdate (sql);
+			return;
+		}//end if
+		if (mode.equals("async")){
+			executeAsyncUpdate (sql);
+			return;
+		}//end if
+		synchronized (this){
+			if (this._intake == null){
+				IntakeQueue.Durability durability = mode.equals("queue-async")
+					? IntakeQueue.Durability.FIRE_AND_FORGET : IntakeQueue.Durability.WAIT_FOR_COMMIT;
+				this._intake = new IntakeQueue (this, DriverManager.getConnection(this._url, this._user, this._passwd), durability,
+					Integer.getInteger("intake.stripes", 4), Integer.getInteger("intake.capacity", 1024), Integer.getInteger("intake.batch", 256));
+			}//end if
+		}//end synchronized
+		this._intake.submit (sql);
+	}//end executeIntakeUpdate
+
+	/**
+	 * Method to execute an update statement in a transaction that does not
+	 * wait for its commit record to reach disk.
+	 *
+	 * @param sql the input SQL string
+	 * @throws java.sql.SQLException when update failed
+	 */
+	private void executeAsyncUpdate (String sql) throws SQLException {
+		awaitIntake ();
+
+		Connection connection = connection ();
+		// the transaction must not take in statements of other threads sharing the connection
+		synchronized (connection){
+			connection.setAutoCommit (false);
+			try{
+				Statement stmt = connection.createStatement ();
+				stmt.execute ("SET LOCAL synchronous_commit = off");
+				stmt.executeUpdate (sql);
+				stmt.close ();
+				connection.commit ();
+			}catch (SQLException e){
+				connection.rollback ();
+				throw e;
+			}finally{
+				connection.setAutoCommit (true);
+			}//end try
+		}//end synchronized
+
+		noteWrite (sql);
+		recordWritePosition (connection);
+	}//end executeAsyncUpdate
+
+	/**
+	 * Method to wait for the intake writes this thread queued, so the next
+	 * statement sees them.
+	 *
+	 * @throws java.sql.SQLException when one of those writes failed
+	 */
+	private void awaitIntake () throws SQLException {
+		IntakeQueue intake;
+		synchronized (this){
+			intake = this._intake;
+		}//end synchronized
+		if (intake != null) intake.sync ();
+	}//end awaitIntake
+
+	/**
+	 * Method to invalidate the cached reports computed from the table an
+	 * INSERT, UPDATE or DELETE statement wrote.
+	 *
+	 * @param sql the committed statement
+	 */
+	public void noteWrite (String sql) {
+		Matcher table = WRITTEN_TABLE.matcher (sql);
+		if (table.find()) this._reportCache.bumpVersion (table.group (1));
+	}//end noteWrite
+
+	/**
+	 * Method to remember where the last write landed in the WAL, so reports
+	 * only read from replicas that replayed it.
+	 *
+	 * @param connection a primary connection the write committed on
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public void recordWritePosition (Connection connection) throws SQLException {
+		if (this._replicaUrls.isEmpty()) return;
+		Statement stmt = connection.createStatement ();
+		// the insert position also covers asynchronous commits the WAL writer has not written yet
+		ResultSet rs = stmt.executeQuery ("SELECT pg_current_wal_insert_lsn()");
+		if (rs.next()) this._lastWriteLsn = rs.getString (1);
+		stmt.close ();
+	}//end recordWritePosition
+
+	/**
+	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
+	 * method issues the query to the DBMS and outputs the results to
+	 * standard out.
+	 *
+	 * @param query the input query string
+	 * @return the number of rows returned
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int executeQueryAndPrintResult (String query) throws SQLException {
+		awaitIntake ();
+		return printResult (connection (), query);
+	}
+
+	/**
+	 * Method to execute a read-only report query.  The query is sent to a
+	 * replica that has replayed this session's last write and is within the
+	 * allowed lag, and to the primary when no replica qualifies.  The results
+	 * are printed to standard out.
+	 *
+	 * @param query the input query string
+	 * @return the number of rows returned
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int executeReportQueryAndPrintResult (String query) throws SQLException {
+		awaitIntake ();
+		Connection connection = getReportConnection (this._lastWriteLsn);
+		try{
+			return printResult (connection, query);
+		}catch (SQLException e){
+			if (connection == connection ()) throw e;
+			// the replica went away or cancelled the query on a recovery conflict after the probe
+			return printResult (connection (), query);
+		}//end try
+	}
+
+	/**
+	 * Method to execute a read-only report query through the report cache.
+	 * A cached result is printed if none of the given tables changed since
+	 * it was computed; otherwise the query runs as in
+	 * executeReportQueryAndPrintResult and its result is cached.
+	 *
+	 * @param query the input query string, also the cache key
+	 * @param tables the tables the query reads
+	 * @return the number of rows returned
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int executeCachedReportQueryAndPrintResult (String query, String... tables) throws SQLException {
+		awaitIntake ();
+		pollNotifications ();
+		List<List<String>> result = this._reportCache.get (query);
+		if (result == null){
+			// versions are taken first, so a write racing with the query leaves the entry stale
+			long[] versions = this._reportCache.getVersions (tables);
+			// every commit counted in those versions is before the primary's current WAL
+			// position, so only a replica that replayed up to there may fill the entry
+			result = readReport (primaryWalPosition (), query);
+			this._reportCache.put (query, result, tables, versions);
+		}//end if
+
+		int rowCount = result.size () - 1;
+		if (rowCount > 0){
+			for (List<String> record : result){
+				for (String value : record)
+					System.out.print (value + "\t");
+				System.out.println ();
+			}//end for
+		}//end if
+		return rowCount;
+	}//end executeCachedReportQueryAndPrintResult
+
+	/**
+	 * Method to describe the report cache usage and hit rate.
+	 *
+	 * @return a printable summary
+	 */
+	public String getReportCacheStats () {
+		return this._reportCache.getStats ();
+	}
+
+	/**
+	 * Method to describe the intake queue depth, batch sizes and commit
+	 * latency.
+	 *
+	 * @return a printable summary
+	 */
+	public synchronized String getIntakeStats () {
+		return this._intake == null ? "Intake queue: no writes yet" : this._intake.getStats ();
+	}
+
+	/**
+	 * Method to bump the version of every table named by a table_changed
+	 * notification received since the last call, and to drop the sketches
+	 * when a table they summarize was truncated.
+	 *
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	private void pollNotifications () throws SQLException {
+		// notifications are only delivered while the connection talks to the server
+		Statement stmt = connection ().createStatement ();
+		stmt.execute ("SELECT 1");
+		stmt.close ();
+
+		PGNotification[] notifications = ((PGConnection) connection ()).getNotifications ();
+		if (notifications == null) return;
+		for (PGNotification notification : notifications){
+			String table = notification.getParameter ();
+			if (!notification.getName ().equals ("table_truncated")){
+				this._reportCache.bumpVersion (table);
+			}else if (this._sketches != null && (table.equals ("owns") || table.equals ("service_request"))){
+				this._sketches.clear ();
+			}//end if
+		}//end for
+	}//end pollNotifications
+
+	/**
+	 * Method to issue a query on the given connection and return the results
+	 * as a list of records, the first record holding the column names.
+	 *
+	 * @param connection the connection to run the query on
+	 * @param query the input query string
+	 * @return the column names followed by the query result
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	private List<List<String>> readResultWithHeader (Connection connection, String query) throws SQLException {
+		Statement stmt = connection.createStatement ();
+		ResultSet rs = stmt.executeQuery (query);
+		ResultSetMetaData rsmd = rs.getMetaData ();
+		int numCol = rsmd.getColumnCount ();
+
+		List<List<String>> result = new ArrayList<List<String>>();
+		List<String> header = new ArrayList<String>();
+		for (int i=1; i<=numCol; ++i)
+			header.add(rsmd.getColumnName (i));
+		result.add(header);
+		while (rs.next()){
+			List<String> record = new ArrayList<String>();
+			for (int i=1; i<=numCol; ++i)
+				record.add(rs.getString (i));
+			result.add(record);
+		}//end while
+		stmt.close ();
+		return result;
+	}//end readResultWithHeader
+
+	/**
+	 * Method to pick the connection a report query runs on.  Replicas are
+	 * tried in round-robin order; a replica is used only if it is in
+	 * recovery, lags less than the configured threshold and has replayed
+	 * the given WAL position, usually the last write made through this
+	 * session (read-your-writes).
+	 *
+	 * A replica counts as caught up only while its WAL receiver is
+	 * streaming and has replayed all it received.  Otherwise, e.g. after
+	 * losing the primary, its lag is the time since the last replayed
+	 * transaction, so it drops out once that exceeds the threshold.  Roles
+	 * without pg_read_all_stats cannot see the receiver status and always
+	 * get the time based lag.
+	 *
+	 * A replica must also have replayed to within replica.maxbytes of the
+	 * primary's current WAL position, since a receiver that keeps up with
+	 * what it received can still be far behind the primary.
+	 *
+	 * @param lsn the WAL position the replica must have replayed, null for none
+	 * @return a replica connection, or the primary connection
+	 * @throws java.sql.SQLException when unable to connect to the primary
+	 */
+	private Connection getReportConnection (String lsn) throws SQLException {
+		List<Connection> replicas = replicas ();
+		if (replicas.isEmpty()) return connection ();
+		String primary = null;
+		try{
+			primary = primaryWalPosition ();
+		}catch (SQLException e){
+			// primary unreachable, so nothing newer than the replicas can be read anyway.
+		}//end try
+
+		String check = "SELECT pg_is_in_recovery(), "
+			+ "CASE WHEN (SELECT status FROM pg_stat_wal_receiver) = 'streaming' "
+			+ "AND pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 "
+			+ "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 'Infinity') END, "
+			+ (lsn == null ? "true" : "pg_last_wal_replay_lsn() >= '" + lsn + "'::pg_lsn") + ", "
+			+ (primary == null ? "0" : "pg_wal_lsn_diff('" + primary + "'::pg_lsn, pg_last_wal_replay_lsn())");
+		for (int tried = 0; tried < replicas.size(); ++tried){
+			Connection replica = replicas.get (this._nextReplica);
+			this._nextReplica = (this._nextReplica + 1) % replicas.size ();
+			try{
+				Statement stmt = replica.createStatement ();
+				ResultSet rs = stmt.executeQuery (check);
+				boolean usable = rs.next() && rs.getBoolean (1) && rs.getDouble (2) <= this._maxReplicaLag && rs.getBoolean (3)
+					&& rs.getDouble (4) <= this._maxReplicaBytes;
+				stmt.close ();
+				if (usable) return replica;
+			}catch (SQLException e){
+				// unreachable replica, try the next one.
+			}//end try
+		}//end for
+		return connection ();
+	}//end getReportConnection
+
+	/**
+	 * Method to read the primary's current WAL position, which every commit
+	 * made so far is before.
+	 *
+	 * @return the position, or null when there are no replicas to compare with it
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	private String primaryWalPosition () throws SQLException {
+		if (this._replicaUrls.isEmpty()) return null;
+		Statement stmt = connection ().createStatement ();
+		ResultSet rs = stmt.executeQuery ("SELECT pg_current_wal_insert_lsn()");
+		String lsn = rs.next() ? rs.getString (1) : null;
+		stmt.close ();
+		return lsn;
+	}//end primaryWalPosition
+
+	/**
+	 * Method to return the later of two WAL positions.
+	 *
+	 * @param a a position such as 0/3000148, or null
+	 * @param b another position, or null
+	 * @return the later one, or the other one when one is null
+	 */
+	private static String laterWalPosition (String a, String b) {
+		if (a == null) return b;
+		if (b == null) return a;
+		return Long.compareUnsigned (walBytes (a), walBytes (b)) >= 0 ? a : b;
+	}//end laterWalPosition
+
+	private static long walBytes (String lsn) {
+		int slash = lsn.indexOf ('/');
+		return Long.parseLong (lsn.substring (0, slash), 16) << 32 | Long.parseLong (lsn.substring (slash + 1), 16);
+	}//end walBytes
+
+	/**
+	 * Method to run a report query as readResultWithHeader does, on the
+	 * connection getReportConnection picks.  A query that fails on a
+	 * replica, e.g. because it went away or cancelled the query on a
+	 * recovery conflict after the probe, is run again on the primary.
+	 *
+	 * @param lsn the WAL position the replica must have replayed, null for none
+	 * @param query the input query string
+	 * @return the column names followed by the query result
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	private List<List<String>> readReport (String lsn, String query) throws SQLException {
+		Connection connection = getReportConnection (lsn);
+		try{
+			return readResultWithHeader (connection, query);
+		}catch (SQLException e){
+			if (connection == connection ()) throw e;
+			return readResultWithHeader (connection (), query);
+		}//end try
+	}//end readReport
+
+	/**
+	 * Method to issue a query on the given connection and output the results
+	 * to standard out.
+	 *
+	 * @param connection the connection to run the query on
+	 * @param query the input query string
+	 * @return the number of rows returned
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	private int printResult (Connection connection, String query) throws SQLException {
+		//creates a statement object
+		Statement stmt = connection.createStatement ();
+
+		//issues the query instruction
+		ResultSet rs = stmt.executeQuery (query);
+
+		/*
+		 *  obtains the metadata object for the returned result set.  The metadata
+		 *  contains row and column info.
+		 */
+		ResultSetMetaData rsmd = rs.getMetaData ();
+		int numCol = rsmd.getColumnCount ();
+		int rowCount = 0;
+
+		//iterates through the result set and output them to standard out.
+		boolean outputHeader = true;
+		while (rs.next()){
+			if(outputHeader){
+				for(int i = 1; i <= numCol; i++){
+					System.out.print(rsmd.getColumnName(i) + "\t");
+			    }
+			    System.out.println();
+			    outputHeader = false;
+			}
+			for (int i=1; i<=numCol; ++i)
+				System.out.print (rs.getString (i) + "\t");
+			System.out.println ();
+			++rowCount;
+		}//end while
+		stmt.close ();
+		return rowCount;
+	}
+
+	/**
+	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
+	 * method issues the query to the DBMS and returns the results as
+	 * a list of records. Each record in turn is a list of attribute values
+	 *
+	 * @param query the input query string
+	 * @return the query result as a list of records
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException {
+		awaitIntake ();
+
+		//creates a statement object
+		Statement stmt = connection ().createStatement ();
+
+		//issues the query instruction
+		ResultSet rs = stmt.executeQuery (query);
+
+		/*
+		 * obtains the metadata object for the returned result set.  The metadata
+		 * contains row and column info.
+		*/
+		ResultSetMetaData rsmd = rs.getMetaData ();
+		int numCol = rsmd.getColumnCount ();
+		int rowCount = 0;
+
+		//iterates through the result set and saves the data returned by the query.
+		boolean outputHeader = false;
+		List<List<String>> result  = new ArrayList<List<String>>();
+		while (rs.next()){
+			List<String> record = new ArrayList<String>();
+			for (int i=1; i<=numCol; ++i)
+				record.add(rs.getString (i));
+			result.add(record);
+		}//end while
+		stmt.close ();
+		return result;
+	}//end executeQueryAndReturnResult
+
+	/**
+	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
+	 * method issues the query to the DBMS and returns the number of results
+	 *
+	 * @param query the input query string
+	 * @return the number of rows returned
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int executeQuery (String query) throws SQLException {
+		awaitIntake ();
+
+		//creates a statement object
+		Statement stmt = connection ().createStatement ();
+
+		//issues the query instruction
+		ResultSet rs = stmt.executeQuery (query);
+
+		int rowCount = 0;
+
+		//iterates through the result set and count nuber of results.
+		if(rs.next()){
+			rowCount++;
+		}//end while
+		stmt.close ();
+		return rowCount;
+	}
+
+	/**
+	 * Method to fetch the last value from sequence. This
+	 * method issues the query to the DBMS and returns the current
+	 * value of sequence used for autogenerated keys
+	 *
+	 * @param sequence name of the DB sequence
+	 * @return current value of a sequence
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+
+	public int getCurrSeqVal(String sequence) throws SQLException {
+		Statement stmt = connection ().createStatement ();
+
+		ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
+		if (rs.next()) return rs.getInt(1);
+		return -1;
+	}
+
+	/**
+	 * Method to return the sketches for the approximate reports, brought up
+	 * to date with the rows added since they were last used.  The sketches
+	 * are loaded from and saved to the file named by the sketch.file
+	 * property (mechanicshop.sketches by default, empty to keep them in
+	 * memory only).
+	 *
+	 * @return the report sketches
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public ReportSketches getSketches() throws SQLException {
+		awaitIntake ();
+		pollNotifications ();
+		if (this._sketches == null){
+			this._sketches = this._sketchFile.isEmpty() ? new ReportSketches(this._url) : ReportSketches.load(new File(this._sketchFile), this._url);
+		}//end if
+
+		// a connection that replayed the last refresh sees every row folded in so far
+		Connection connection = getReportConnection (laterWalPosition (this._lastWriteLsn, this._sketches.getPosition ()));
+		boolean changed;
+		try{
+			changed = this._sketches.refresh (connection);
+		}catch (SQLException e){
+			if (connection == connection ()) throw e;
+			// rows folded in before the failure stay; the rest is read from the primary
+			this._sketches.refresh (connection ());
+			changed = true;
+		}//end try
+		if (changed && !this._sketchFile.isEmpty()){
+			try{
+				this._sketches.save(new File(this._sketchFile));
+			}catch (IOException e){
+				System.err.println("Warning - Unable to save sketches to " + this._sketchFile + ": " + e.getMessage());
+			}//end try
+		}//end if
+		return this._sketches;
+	}//end getSketches
+
+	/**
+	 * Method to close the physical connection if it is open.
+	 */
+	public void cleanup(){
+		try{
+			// commits what is still queued before the connections go away
+			synchronized (this){
+				if (this._intake != null){
+					try{
+						this._intake.sync ();
+					}catch (SQLException e){
+						System.err.println (e.getMessage ());
+					}//end try
+					this._intake.close ();
+				}//end if
+			}//end synchronized
+			if (this._connection != null){
+				this._connection.close ();
+			}//end if
+			for (Connection replica : this._replicas){
+				replica.close ();
+			}//end for
+		}catch (SQLException e){
+	         // ignored.
+		}//end try
+	}//end cleanup
+
+}
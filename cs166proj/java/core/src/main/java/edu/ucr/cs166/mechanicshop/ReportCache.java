@@ -0,0 +1,148 @@
+package edu.ucr.cs166.mechanicshop;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class defines a memory bounded cache of report results.  Every
+ * table has a version counter that is bumped whenever the table changes;
+ * an entry remembers the versions of the tables it was computed from and
+ * is dropped as soon as one of them moves.  When the estimated size of the
+ * entries exceeds the bound, the least recently used entries are evicted.
+ *
+ */
+
+public class ReportCache{
+	private static class Entry{
+		List<List<String>> result;
+		String[] tables;
+		long[] versions;
+		long bytes;
+	}
+
+	//access ordered, so iteration starts at the least recently used entry
+	private LinkedHashMap<String, Entry> _entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private Map<String, Long> _versions = new HashMap<String, Long>();
+	private long _maxBytes;
+	private long _bytes = 0;
+	private long _hits = 0;
+	private long _misses = 0;
+	private long _invalidations = 0;
+	private long _evictions = 0;
+
+	public ReportCache(long maxBytes){
+		this._maxBytes = maxBytes;
+	}
+
+	/**
+	 * Method to record that a table changed, which invalidates every entry
+	 * computed from it.
+	 *
+	 * @param table the name of the changed table
+	 */
+	public synchronized void bumpVersion(String table){
+		String name = table.toLowerCase();
+		this._versions.put(name, getVersion(name) + 1);
+	}//end bumpVersion
+
+	/**
+	 * Method to return the current versions of the given tables.  Take the
+	 * versions before running the query whose result is stored with them.
+	 *
+	 * @param tables the names of the tables
+	 * @return the version of each table
+	 */
+	public synchronized long[] getVersions(String[] tables){
+		long[] versions = new long[tables.length];
+		for (int i = 0; i < tables.length; ++i)
+			versions[i] = getVersion(tables[i].toLowerCase());
+		return versions;
+	}//end getVersions
+
+	/**
+	 * Method to look up a cached result.
+	 *
+	 * @param key the report and its parameters
+	 * @return the cached records, the first being the column names, or null
+	 */
+	public synchronized List<List<String>> get(String key){
+		Entry entry = this._entries.get(key);
+		if (entry != null && !Arrays.equals(entry.versions, getVersions(entry.tables))){
+			remove(key);
+			++this._invalidations;
+			entry = null;
+		}//end if
+		if (entry == null){
+			++this._misses;
+			return null;
+		}//end if
+		++this._hits;
+		return entry.result;
+	}//end get
+
+	/**
+	 * Method to cache a result.  Results larger than the whole cache are
+	 * not kept.
+	 *
+	 * @param key the report and its parameters
+	 * @param result the records, the first being the column names
+	 * @param tables the tables the result was computed from
+	 * @param versions the versions of those tables before the query ran
+	 */
+	public synchronized void put(String key, List<List<String>> result, String[] tables, long[] versions){
+		Entry entry = new Entry();
+		entry.result = result;
+		entry.tables = tables;
+		entry.versions = versions;
+		entry.bytes = estimateBytes(result);
+		if (entry.bytes > this._maxBytes) return;
+
+		remove(key);
+		this._entries.put(key, entry);
+		this._bytes += entry.bytes;
+		Iterator<Map.Entry<String, Entry>> lru = this._entries.entrySet().iterator();
+		while (this._bytes > this._maxBytes && lru.hasNext()){
+			this._bytes -= lru.next().getValue().bytes;
+			lru.remove();
+			++this._evictions;
+		}//end while
+	}//end put
+
+	/**
+	 * Method to describe the cache usage and hit rate.
+	 *
+	 * @return a printable summary
+	 */
+	public synchronized String getStats(){
+		long lookups = this._hits + this._misses;
+		return "Report cache: " + this._entries.size() + " entries, " + this._bytes + "/" + this._maxBytes + " bytes\n"
+			+ "  hits " + this._hits + ", misses " + this._misses
+			+ ", hit rate " + (lookups == 0 ? 0 : 100 * this._hits / lookups) + "%\n"
+			+ "  invalidations " + this._invalidations + ", evictions " + this._evictions;
+	}//end getStats
+
+	private long getVersion(String table){
+		Long version = this._versions.get(table);
+		return version == null ? 0 : version;
+	}//end getVersion
+
+	private void remove(String key){
+		Entry entry = this._entries.remove(key);
+		if (entry != null) this._bytes -= entry.bytes;
+	}//end remove
+
+	// rough heap footprint: list and string headers plus two bytes per char
+	private static long estimateBytes(List<List<String>> result){
+		long bytes = 64;
+		for (List<String> record : result){
+			bytes += 48;
+			for (String value : record)
+				bytes += 48 + (value == null ? 0 : 2L * value.length());
+		}//end for
+		return bytes;
+	}//end estimateBytes
+}
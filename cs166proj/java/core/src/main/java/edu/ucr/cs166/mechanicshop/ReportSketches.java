@@ -0,0 +1,286 @@
+package edu.ucr.cs166.mechanicshop;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * This class maintains the sketches behind the approximate dashboard
+ * reports: one HyperLogLog per customer over the cars they own, and a
+ * Count-Min sketch plus Space-Saving summary over the VINs of service
+ * requests.  The sketches only fold in rows whose key is above the last
+ * one seen, so rows deleted from the database are not forgotten.
+ *
+ * The sketches are saved to a file after every refresh and loaded from it
+ * by the next process, so only the first one reads the whole tables.  The
+ * file names the database it was built from, and the sketches remember
+ * the storage of Owns and Service_Request; a file of another database is
+ * ignored, and the sketches start over once either table was truncated or
+ * recreated, since that gives it new storage.
+ *
+ * A refresh reads everything on one connection, a replica or the primary,
+ * and remembers the WAL position that connection had replayed.  The next
+ * refresh must use a connection that replayed at least that far, so it
+ * sees every row already folded in.
+ *
+ */
+
+public class ReportSketches{
+	private static final int HLL_PRECISION = 10;
+	private static final int CMS_WIDTH = 16384;
+	private static final int CMS_DEPTH = 5;
+	private static final int TOP_CAPACITY = 2048;
+	private static final int MAGIC = 0x4d53534b;
+	private static final int VERSION = 3;
+
+	private Map<Integer, HyperLogLog> _carsPerCustomer = new HashMap<Integer, HyperLogLog>();
+	private CountMinSketch _servicesPerCar = new CountMinSketch(CMS_WIDTH, CMS_DEPTH);
+	private SpaceSaving _mostServicedCars = new SpaceSaving(TOP_CAPACITY);
+	//highest Owns.ownership_id and Service_Request.rid folded into the sketches
+	private int _lastOwnershipId = Integer.MIN_VALUE;
+	private int _lastRequestId = Integer.MIN_VALUE;
+	//the primary the sketches were built from
+	private String _database;
+	//database OID and Owns and Service_Request file nodes, null before the first refresh
+	private String _storage = null;
+	//WAL position the connection of the last refresh had replayed, null before the first refresh
+	private String _position = null;
+
+	/**
+	 * Creates empty sketches.
+	 *
+	 * @param database the URL of the primary the sketches are built from
+	 */
+	public ReportSketches(String database){
+		this._database = database;
+	}
+
+	/**
+	 * @return the WAL position a connection must have replayed to refresh
+	 * the sketches, null for any
+	 */
+	public String getPosition(){
+		return this._position;
+	}
+
+	/**
+	 * Method to forget everything folded in, e.g. after a table was
+	 * truncated.
+	 */
+	public void clear(){
+		this._carsPerCustomer.clear();
+		this._servicesPerCar = new CountMinSketch(CMS_WIDTH, CMS_DEPTH);
+		this._mostServicedCars = new SpaceSaving(TOP_CAPACITY);
+		this._lastOwnershipId = Integer.MIN_VALUE;
+		this._lastRequestId = Integer.MIN_VALUE;
+		this._storage = null;
+		this._position = null;
+	}//end clear
+
+	/**
+	 * Method to fold rows added since the last refresh into the sketches.
+	 * All queries run on the given connection, which must have replayed
+	 * the position returned by getPosition.
+	 *
+	 * @param connection the primary or a replica of it
+	 * @return whether the sketches changed
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public boolean refresh(Connection connection) throws SQLException {
+		Statement stmt = connection.createStatement();
+		try{
+			// the position is read first, so every row read below is at or after it
+			ResultSet rs = stmt.executeQuery(
+				"SELECT (SELECT oid FROM pg_database WHERE datname = current_database()) "
+				+ "|| '/' || pg_relation_filenode('owns') || '/' || pg_relation_filenode('service_request'), "
+				+ "CASE WHEN pg_is_in_recovery() THEN pg_last_wal_replay_lsn() ELSE pg_current_wal_insert_lsn() END, "
+				+ "(SELECT MAX(ownership_id) FROM Owns), (SELECT MAX(rid) FROM Service_Request);");
+			rs.next();
+			String storage = rs.getString(1);
+			String position = rs.getString(2);
+			boolean changed = false;
+			if (!storage.equals(this._storage)){
+				clear();
+				this._storage = storage;
+				changed = true;
+			}else if (below(rs.getString(3), this._lastOwnershipId) || below(rs.getString(4), this._lastRequestId)){
+				// same storage but fewer rows: the connection has not replayed the last refresh
+				return false;
+			}//end if
+
+			rs = stmt.executeQuery(
+				"SELECT ownership_id, customer_id, car_vin FROM Owns WHERE ownership_id > " + this._lastOwnershipId + ";");
+			while (rs.next()){
+				this._lastOwnershipId = Math.max(this._lastOwnershipId, rs.getInt(1));
+				Integer customer = rs.getInt(2);
+				HyperLogLog cars = this._carsPerCustomer.get(customer);
+				if (cars == null){
+					cars = new HyperLogLog(HLL_PRECISION);
+					this._carsPerCustomer.put(customer, cars);
+				}//end if
+				cars.add(rs.getString(3).trim());
+				changed = true;
+			}//end while
+
+			rs = stmt.executeQuery(
+				"SELECT rid, car_vin FROM Service_Request WHERE rid > " + this._lastRequestId + ";");
+			while (rs.next()){
+				this._lastRequestId = Math.max(this._lastRequestId, rs.getInt(1));
+				String vin = rs.getString(2).trim();
+				this._servicesPerCar.add(vin, 1);
+				this._mostServicedCars.add(vin);
+				changed = true;
+			}//end while
+
+			changed |= !position.equals(this._position);
+			this._position = position;
+			return changed;
+		}finally{
+			stmt.close();
+		}//end try
+	}//end refresh
+
+	private static boolean below(String key, int watermark){
+		return watermark != Integer.MIN_VALUE && (key == null || Integer.parseInt(key) < watermark);
+	}//end below
+
+	/**
+	 * Method to save the sketches.  The file is replaced atomically, so
+	 * processes saving at the same time leave one complete copy.
+	 *
+	 * @param file the file to write
+	 * @throws java.io.IOException when the file cannot be written
+	 */
+	public void save(File file) throws IOException {
+		File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+		try{
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(new FileOutputStream(temp)), 65536));
+			try{
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(this._database);
+				out.writeUTF(this._storage == null ? "" : this._storage);
+				out.writeUTF(this._position == null ? "" : this._position);
+				out.writeInt(this._lastOwnershipId);
+				out.writeInt(this._lastRequestId);
+				out.writeInt(this._carsPerCustomer.size());
+				for (Map.Entry<Integer, HyperLogLog> entry : this._carsPerCustomer.entrySet()){
+					out.writeInt(entry.getKey());
+					entry.getValue().write(out);
+				}//end for
+				this._servicesPerCar.write(out);
+				this._mostServicedCars.write(out);
+			}finally{
+				out.close();
+			}//end try
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}finally{
+			temp.delete();
+		}//end try
+	}//end save
+
+	/**
+	 * Method to load the sketches saved by save.
+	 *
+	 * @param file the file to read
+	 * @param database the URL of the primary the sketches must have been built from
+	 * @return the saved sketches, or empty ones if the file is missing,
+	 * unreadable or belongs to another database
+	 */
+	public static ReportSketches load(File file, String database){
+		ReportSketches sketches = new ReportSketches(database);
+		if (!file.exists()) return sketches;
+		try{
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(new FileInputStream(file)), 65536));
+			try{
+				if (in.readInt() != MAGIC || in.readInt() != VERSION)
+					throw new IOException("not a sketch file");
+				String built = in.readUTF();
+				if (!built.equals(database))
+					throw new IOException("built from " + built);
+				sketches._storage = in.readUTF();
+				sketches._position = in.readUTF();
+				if (sketches._storage.isEmpty()) sketches._storage = null;
+				if (sketches._position.isEmpty()) sketches._position = null;
+				sketches._lastOwnershipId = in.readInt();
+				sketches._lastRequestId = in.readInt();
+				for (int customers = in.readInt(); customers > 0; --customers)
+					sketches._carsPerCustomer.put(in.readInt(), HyperLogLog.read(in));
+				sketches._servicesPerCar = CountMinSketch.read(in);
+				sketches._mostServicedCars = SpaceSaving.read(in);
+			}finally{
+				in.close();
+			}//end try
+			return sketches;
+		}catch (IOException e){
+			// rebuilt from the tables
+			System.err.println("Warning - Ignoring sketch file " + file + ": " + e.getMessage());
+			return new ReportSketches(database);
+		}//end try
+	}//end load
+
+	/**
+	 * Method to list the customers whose estimated number of distinct cars
+	 * exceeds the given threshold.
+	 *
+	 * @param threshold the number of cars to exceed
+	 * @return a comma separated list of customer ids, empty if there are none
+	 */
+	public String customersWithMoreCarsThan(int threshold){
+		String ids = "";
+		for (Map.Entry<Integer, HyperLogLog> entry : this._carsPerCustomer.entrySet()){
+			if (entry.getValue().estimate() > threshold)
+				ids += (ids.length() == 0 ? "" : ", ") + entry.getKey();
+		}//end for
+		return ids;
+	}//end customersWithMoreCarsThan
+
+	/**
+	 * Method to list the k most serviced cars with their estimated number of
+	 * service requests, formatted as the rows of a SQL VALUES list.  The
+	 * Space-Saving summary nominates the candidates and the Count-Min
+	 * sketch, whose error does not grow with the number of distinct cars,
+	 * ranks them.
+	 *
+	 * @param k the number of cars
+	 * @return the rows ('vin', count), empty if no requests were seen
+	 */
+	public String mostServicedCars(int k){
+		List<String> candidates = this._mostServicedCars.top(TOP_CAPACITY);
+		final CountMinSketch counts = this._servicesPerCar;
+		Collections.sort(candidates, new Comparator<String>(){
+			public int compare(String a, String b){
+				return Long.compare(counts.estimate(b), counts.estimate(a));
+			}
+		});
+		String rows = "";
+		for (int i = 0; i < k && i < candidates.size(); ++i){
+			String vin = candidates.get(i);
+			rows += (rows.length() == 0 ? "" : ", ");
+			rows += "('" + vin + "', " + counts.estimate(vin) + ")";
+		}//end for
+		return rows;
+	}//end mostServicedCars
+
+	public int getTopCapacity(){
+		return TOP_CAPACITY;
+	}
+}
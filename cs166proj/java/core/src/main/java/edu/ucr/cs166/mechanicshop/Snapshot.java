@@ -0,0 +1,411 @@
+package edu.ucr.cs166.mechanicshop;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyInputStream;
+import org.postgresql.copy.PGCopyOutputStream;
+
+/**
+ * This class exports the six tables of the mechanic shop database to a
+ * snapshot directory (one SnapshotWriter file per table) and restores them
+ * through binary COPY.  Every table is copied on its own connection.
+ * Export reads all tables from one exported transaction snapshot, so the
+ * files are consistent with each other.
+ *
+ * Restore only needs to own the tables.  It drops their foreign keys,
+ * whose per-row checks cost more than the load itself, loads all tables
+ * at once, and adds the keys back NOT VALID before validating each with a
+ * single query.  Every table is truncated and loaded in one transaction,
+ * which lets COPY FREEZE write the rows already frozen (and skip the WAL
+ * when wal_level is minimal).  The files are checked while they stream;
+ * the tables commit only once all of them loaded, so a corrupt snapshot
+ * leaves the database as it was.  If the process dies between dropping
+ * and adding back the keys they stay dropped, and restoring again does not
+ * bring them back; create.sql defines them.
+ *
+ */
+
+public class Snapshot{
+	//tables in foreign key order
+	static final String[] TABLES = {"Customer", "Mechanic", "Car", "Owns", "Service_Request", "Closed_Request"};
+	static final String[][] COLUMNS = {
+		{"id", "fname", "lname", "phone", "address"},
+		{"id", "fname", "lname", "experience"},
+		{"vin", "make", "model", "year"},
+		{"ownership_id", "customer_id", "car_vin"},
+		{"rid", "customer_id", "car_vin", "date", "odometer", "complain"},
+		{"wid", "rid", "mid", "date", "comment", "bill"}};
+	static final String[] TYPES = {"ITTTT", "ITTI", "TTTI", "IIT", "IITDIT", "IIIDTI"};
+
+	//header of a binary COPY stream: signature, flags and header extension length
+	private static final byte[] COPY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0};
+
+	private String _url;
+	private String _user;
+	private String _passwd;
+
+	public Snapshot(String dbname, String dbport, String user, String passwd){
+		this._url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
+		this._user = user;
+		this._passwd = passwd;
+	}
+
+	/**
+	 * Method to export all tables into a snapshot directory, one table per
+	 * connection in parallel.  A REPEATABLE READ transaction exports its
+	 * snapshot and stays open until every worker has adopted it.
+	 *
+	 * @param dir the snapshot directory, created if needed
+	 * @throws java.lang.Exception when a table failed to export
+	 */
+	public void export(final File dir) throws Exception {
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Unable to create snapshot directory " + dir);
+
+		Connection connection = DriverManager.getConnection(this._url, this._user, this._passwd);
+		try{
+			connection.setAutoCommit(false);
+			connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+			Statement stmt = connection.createStatement();
+			ResultSet rs = stmt.executeQuery("SELECT pg_export_snapshot()");
+			rs.next();
+			final String snapshot = rs.getString(1);
+			stmt.close();
+
+			List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+			for (int t = 0; t < TABLES.length; ++t){
+				final int table = t;
+				tasks.add(new Callable<Long>(){
+					public Long call() throws Exception {
+						return exportTable(table, new File(dir, TABLES[table].toLowerCase() + ".snap"), snapshot);
+					}
+				});
+			}//end for
+			runAll(tasks);
+		}finally{
+			connection.close();
+		}//end try
+	}//end export
+
+	/**
+	 * Method to replace the contents of all tables with a snapshot.  All
+	 * tables are loaded in parallel, one connection each, with their foreign
+	 * keys dropped for the load and validated afterwards.
+	 *
+	 * @param dir the snapshot directory
+	 * @throws java.lang.Exception when a table failed to restore, or the
+	 * restored rows break a foreign key
+	 */
+	public void restore(final File dir) throws Exception {
+		final SnapshotReader[] readers = new SnapshotReader[TABLES.length];
+		Connection connection = DriverManager.getConnection(this._url, this._user, this._passwd);
+		try{
+			for (int t = 0; t < TABLES.length; ++t){
+				File file = new File(dir, TABLES[t].toLowerCase() + ".snap");
+				readers[t] = new SnapshotReader(file);
+				if (!readers[t].getTableName().equalsIgnoreCase(TABLES[t]) || !readers[t].getColumnTypes().equals(TYPES[t]))
+					throw new IOException(file + " does not hold a snapshot of " + TABLES[t]);
+			}//end for
+
+			List<String[]> foreignKeys = dropForeignKeys(connection);
+			try{
+				// every table commits only once all of them loaded
+				final CountDownLatch loaded = new CountDownLatch(TABLES.length);
+				final AtomicBoolean failed = new AtomicBoolean();
+				List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+				for (int t = 0; t < TABLES.length; ++t){
+					final int table = t;
+					tasks.add(new Callable<Long>(){
+						public Long call() throws Exception {
+							return restoreTable(table, readers[table], loaded, failed);
+						}
+					});
+				}//end for
+				runAll(tasks);
+			}finally{
+				addForeignKeys(connection, foreignKeys);
+			}//end try
+		}finally{
+			for (SnapshotReader reader : readers){
+				if (reader != null) reader.close();
+			}//end for
+			connection.close();
+		}//end try
+	}//end restore
+
+	/**
+	 * Method to drop the foreign keys of the six tables in one transaction.
+	 *
+	 * @param connection an autocommit connection
+	 * @return the table, name and definition of every dropped key
+	 * @throws java.sql.SQLException when a key cannot be dropped; none are then
+	 */
+	private static List<String[]> dropForeignKeys(Connection connection) throws SQLException {
+		String tables = "";
+		for (String table : TABLES)
+			tables += (tables.length() == 0 ? "" : ", ") + "'" + table + "'::regclass";
+		List<String[]> foreignKeys = new ArrayList<String[]>();
+		Statement stmt = connection.createStatement();
+		ResultSet rs = stmt.executeQuery(
+			"SELECT conrelid::regclass, quote_ident(conname), pg_get_constraintdef(oid) FROM pg_constraint "
+			+ "WHERE contype = 'f' AND conrelid IN (" + tables + ") ORDER BY conrelid, conname");
+		while (rs.next())
+			foreignKeys.add(new String[] { rs.getString(1), rs.getString(2), rs.getString(3) });
+		rs.close();
+
+		connection.setAutoCommit(false);
+		try{
+			for (String[] foreignKey : foreignKeys)
+				stmt.executeUpdate("ALTER TABLE " + foreignKey[0] + " DROP CONSTRAINT " + foreignKey[1]);
+			connection.commit();
+		}catch (SQLException e){
+			connection.rollback();
+			throw e;
+		}finally{
+			connection.setAutoCommit(true);
+			stmt.close();
+		}//end try
+		return foreignKeys;
+	}//end dropForeignKeys
+
+	/**
+	 * Method to add back the foreign keys dropForeignKeys dropped.  Each is
+	 * added NOT VALID, which takes no scan, and then validated, which checks
+	 * the whole table in one query instead of one trigger call per row.  A
+	 * key whose validation fails stays NOT VALID: it is enforced for new
+	 * rows, and validating it again once the rows are fixed completes it.
+	 *
+	 * @param connection an autocommit connection
+	 * @param foreignKeys the keys dropForeignKeys returned
+	 * @throws java.sql.SQLException the first key that could not be added or
+	 * validated, with the later failures chained to it
+	 */
+	private static void addForeignKeys(Connection connection, List<String[]> foreignKeys) throws SQLException {
+		SQLException failure = null;
+		Statement stmt = connection.createStatement();
+		for (String[] foreignKey : foreignKeys){
+			try{
+				stmt.executeUpdate("ALTER TABLE " + foreignKey[0] + " ADD CONSTRAINT " + foreignKey[1] + " " + foreignKey[2] + " NOT VALID");
+			}catch (SQLException e){
+				SQLException lost = new SQLException("Unable to add back foreign key " + foreignKey[1] + " " + foreignKey[2]
+					+ " of " + foreignKey[0] + ": " + e.getMessage(), e);
+				if (failure == null) failure = lost;
+				else failure.setNextException(lost);
+				foreignKey[1] = null;
+			}//end try
+		}//end for
+		for (String[] foreignKey : foreignKeys){
+			if (foreignKey[1] == null) continue;
+			try{
+				long start = System.currentTimeMillis();
+				stmt.executeUpdate("ALTER TABLE " + foreignKey[0] + " VALIDATE CONSTRAINT " + foreignKey[1]);
+				System.out.println("Validated " + foreignKey[1] + " of " + foreignKey[0] + " in " + (System.currentTimeMillis() - start) + " ms");
+			}catch (SQLException e){
+				SQLException invalid = new SQLException("Restored rows of " + foreignKey[0] + " break foreign key " + foreignKey[1]
+					+ ", left NOT VALID: " + e.getMessage(), e);
+				if (failure == null) failure = invalid;
+				else failure.setNextException(invalid);
+			}//end try
+		}//end for
+		stmt.close();
+		if (failure != null) throw failure;
+	}//end addForeignKeys
+
+	private long exportTable(int table, File file, String snapshot) throws Exception {
+		long start = System.currentTimeMillis();
+		long rows = 0;
+		Connection connection = DriverManager.getConnection(this._url, this._user, this._passwd);
+		try{
+			connection.setAutoCommit(false);
+			connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+			Statement stmt = connection.createStatement();
+			stmt.execute("SET TRANSACTION SNAPSHOT '" + snapshot + "'");
+			stmt.close();
+
+			String copy = "COPY " + TABLES[table] + " (" + columnList(table) + ") TO STDOUT (FORMAT binary)";
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new PGCopyInputStream((PGConnection) connection, copy), 65536));
+			SnapshotWriter writer = new SnapshotWriter(file, TABLES[table], COLUMNS[table], TYPES[table]);
+
+			byte[] signature = new byte[COPY_SIGNATURE.length];
+			in.readFully(signature);
+			if (!Arrays.equals(signature, COPY_SIGNATURE))
+				throw new IOException("Unexpected COPY format for " + TABLES[table]);
+			in.readInt();
+			in.skipBytes(in.readInt());
+
+			byte[][] fields = new byte[COLUMNS[table].length][];
+			while (in.readShort() != -1){
+				for (int i = 0; i < fields.length; ++i){
+					int length = in.readInt();
+					fields[i] = length < 0 ? null : new byte[length];
+					if (fields[i] != null) in.readFully(fields[i]);
+				}//end for
+				writer.addRow(fields);
+				++rows;
+			}//end while
+			// drain to the end of the COPY so the connection can be reused
+			while (in.read() != -1);
+			in.close();
+			writer.close();
+			connection.commit();
+		}catch (EOFException e){
+			throw new IOException("Unexpected end of COPY data for " + TABLES[table]);
+		}finally{
+			connection.close();
+		}//end try
+		System.out.println("Exported " + rows + " rows of " + TABLES[table] + " in " + (System.currentTimeMillis() - start) + " ms");
+		return rows;
+	}//end exportTable
+
+	/**
+	 * Method to replace the rows of one table in a transaction that only
+	 * commits if every table loaded.  The checksums of the file are checked
+	 * as its row groups stream into the COPY.
+	 *
+	 * @param table the index of the table
+	 * @param reader the snapshot file of the table
+	 * @param loaded counted down once this table loaded or failed
+	 * @param failed set when any table failed to load
+	 * @return the number of rows restored, or 0 when another table failed
+	 * @throws java.lang.Exception when the table failed to load
+	 */
+	private long restoreTable(int table, SnapshotReader reader, CountDownLatch loaded, AtomicBoolean failed) throws Exception {
+		long start = System.currentTimeMillis();
+		long rows = 0;
+		Connection connection = null;
+		PGCopyOutputStream copy = null;
+		boolean done = false;
+		try{
+			try{
+				connection = DriverManager.getConnection(this._url, this._user, this._passwd);
+				connection.setAutoCommit(false);
+				Statement stmt = connection.createStatement();
+				stmt.executeUpdate("TRUNCATE " + TABLES[table]);
+				stmt.close();
+
+				// FREEZE is allowed since the table was truncated in this transaction
+				copy = new PGCopyOutputStream((PGConnection) connection,
+					"COPY " + TABLES[table] + " (" + columnList(table) + ") FROM STDIN (FORMAT binary, FREEZE)");
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(copy, 65536));
+				out.write(COPY_SIGNATURE);
+				out.writeInt(0);
+				out.writeInt(0);
+
+				byte[][] columns;
+				while ((columns = reader.nextColumns()) != null){
+					// interleave the column blocks back into rows
+					int[] offsets = new int[columns.length];
+					for (int r = 0; r < reader.getGroupRowCount(); ++r){
+						out.writeShort(columns.length);
+						for (int i = 0; i < columns.length; ++i){
+							byte[] column = columns[i];
+							int at = offsets[i];
+							int length = ((column[at] & 0xff) << 24) | ((column[at + 1] & 0xff) << 16) | ((column[at + 2] & 0xff) << 8) | (column[at + 3] & 0xff);
+							int size = 4 + Math.max(length, 0);
+							out.write(column, at, size);
+							offsets[i] = at + size;
+						}//end for
+					}//end for
+					rows += reader.getGroupRowCount();
+				}//end while
+				out.writeShort(-1);
+				out.close();
+				done = true;
+			}finally{
+				if (!done){
+					failed.set(true);
+					try{
+						if (copy != null && copy.isActive()) copy.cancelCopy();
+					}catch (SQLException e){
+						// the rollback ends the copy anyway.
+					}//end try
+				}//end if
+				loaded.countDown();
+			}//end try
+
+			loaded.await();
+			if (failed.get()){
+				connection.rollback();
+				return 0;
+			}//end if
+			connection.commit();
+		}finally{
+			if (connection != null) connection.close();
+		}//end try
+		System.out.println("Restored " + rows + " rows of " + TABLES[table] + " in " + (System.currentTimeMillis() - start) + " ms");
+		return rows;
+	}//end restoreTable
+
+	private static String columnList(int table){
+		String columns = "";
+		for (String column : COLUMNS[table])
+			columns += (columns.length() == 0 ? "" : ", ") + column;
+		return columns;
+	}//end columnList
+
+	// runs the tasks in parallel and rethrows the first failure
+	private static void runAll(List<Callable<Long>> tasks) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(tasks.size());
+		try{
+			List<Future<Long>> results = pool.invokeAll(tasks);
+			for (Future<Long> result : results){
+				try{
+					result.get();
+				}catch (ExecutionException e){
+					throw (Exception) e.getCause();
+				}//end try
+			}//end for
+		}finally{
+			pool.shutdown();
+		}//end try
+	}//end runAll
+
+	/**
+	 * The main execution method
+	 *
+	 * @param args the command line arguments <export|restore> <dir> <dbname> <port> <user>
+	 */
+	public static void main (String[] args) {
+		if (args.length != 5 || !(args[0].equals("export") || args[0].equals("restore"))) {
+			System.err.println (
+				"Usage: " + "java [-classpath <classpath>] " + Snapshot.class.getName () +
+		            " <export|restore> <dir> <dbname> <port> <user>");
+			return;
+		}//end if
+
+		long start = System.currentTimeMillis();
+		try{
+			Snapshot snapshot = new Snapshot(args[2], args[3], args[4], "");
+			if (args[0].equals("export")){
+				snapshot.export(new File(args[1]));
+			}else{
+				snapshot.restore(new File(args[1]));
+			}//end if
+			System.out.println("Done in " + (System.currentTimeMillis() - start) + " ms");
+		}catch(Exception e){
+			System.err.println (e.getMessage ());
+			System.exit(-1);
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package edu.ucr.cs166.mechanicshop;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * This class reads one table of a snapshot written by SnapshotWriter.
+ * Row groups are returned either as raw column blocks, for loading through
+ * binary COPY, or decoded into records of strings for offline and
+ * benchmark tools.  Every block is checked against its CRC32.
+ *
+ */
+
+public class SnapshotReader{
+	private DataInputStream _in;
+	private String _table;
+	private String[] _columns;
+	private String _types;
+	private int _groupRows = 0;
+
+	public SnapshotReader(File file) throws IOException {
+		this._in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+		if (this._in.readInt() != SnapshotWriter.MAGIC || this._in.readInt() != SnapshotWriter.VERSION){
+			this._in.close();
+			throw new IOException(file + " is not a version " + SnapshotWriter.VERSION + " snapshot");
+		}//end if
+		this._table = this._in.readUTF();
+		this._columns = new String[this._in.readInt()];
+		String types = "";
+		for (int i = 0; i < this._columns.length; ++i){
+			this._columns[i] = this._in.readUTF();
+			types += (char) this._in.readByte();
+		}//end for
+		this._types = types;
+	}
+
+	public String getTableName(){
+		return this._table;
+	}
+
+	public String[] getColumnNames(){
+		return this._columns;
+	}
+
+	public String getColumnTypes(){
+		return this._types;
+	}
+
+	/**
+	 * @return the number of rows in the group last returned
+	 */
+	public int getGroupRowCount(){
+		return this._groupRows;
+	}
+
+	/**
+	 * Method to read the next row group as raw column blocks, each the
+	 * sequence of its values in the binary COPY field format.
+	 *
+	 * @return one block per column, or null after the last group
+	 * @throws java.io.IOException when the file is truncated or corrupt
+	 */
+	public byte[][] nextColumns() throws IOException {
+		this._groupRows = this._in.readInt();
+		if (this._groupRows == 0) return null;
+
+		byte[][] columns = new byte[this._columns.length][];
+		Inflater inflater = new Inflater();
+		try{
+			for (int i = 0; i < columns.length; ++i){
+				byte[] raw = new byte[this._in.readInt()];
+				byte[] compressed = new byte[this._in.readInt()];
+				long checksum = this._in.readLong();
+				this._in.readFully(compressed);
+
+				inflater.reset();
+				inflater.setInput(compressed);
+				if (inflater.inflate(raw) != raw.length || !inflater.finished())
+					throw new IOException("Truncated column " + this._columns[i] + " in snapshot of " + this._table);
+				CRC32 crc = new CRC32();
+				crc.update(raw);
+				if (crc.getValue() != checksum)
+					throw new IOException("Checksum mismatch in column " + this._columns[i] + " in snapshot of " + this._table);
+				if (!holdsFields(raw, this._groupRows))
+					throw new IOException("Malformed column " + this._columns[i] + " in snapshot of " + this._table);
+				columns[i] = raw;
+			}//end for
+		}catch (DataFormatException e){
+			throw new IOException("Corrupt snapshot of " + this._table + ": " + e.getMessage());
+		}finally{
+			inflater.end();
+		}//end try
+		return columns;
+	}//end nextColumns
+
+	/**
+	 * Method to read the next row group as a list of records.  Each record
+	 * in turn is a list of attribute values, formatted the way the JDBC
+	 * driver returns them (dates as yyyy-mm-dd).
+	 *
+	 * @return the records, or null after the last group
+	 * @throws java.io.IOException when the file is truncated or corrupt
+	 */
+	public List<List<String>> nextRows() throws IOException {
+		byte[][] columns = nextColumns();
+		if (columns == null) return null;
+
+		ByteBuffer[] values = new ByteBuffer[columns.length];
+		for (int i = 0; i < columns.length; ++i)
+			values[i] = ByteBuffer.wrap(columns[i]);
+		List<List<String>> result = new ArrayList<List<String>>();
+		for (int r = 0; r < this._groupRows; ++r){
+			List<String> record = new ArrayList<String>();
+			for (int i = 0; i < columns.length; ++i)
+				record.add(decode(values[i], this._types.charAt(i)));
+			result.add(record);
+		}//end for
+		return result;
+	}//end nextRows
+
+	public void close() throws IOException {
+		this._in.close();
+	}
+
+	// checks that a column block is exactly the given number of binary COPY fields
+	private static boolean holdsFields(byte[] column, int count){
+		ByteBuffer fields = ByteBuffer.wrap(column);
+		for (int i = 0; i < count; ++i){
+			if (fields.remaining() < 4) return false;
+			int length = fields.getInt();
+			if (length < -1 || length > fields.remaining()) return false;
+			if (length > 0) fields.position(fields.position() + length);
+		}//end for
+		return !fields.hasRemaining();
+	}//end holdsFields
+
+	// decodes one binary COPY field and advances past it
+	private static String decode(ByteBuffer value, char type){
+		int length = value.getInt();
+		if (length < 0) return null;
+		switch (type){
+			case 'I':
+				return Integer.toString(value.getInt());
+			case 'D':
+				// days since the PostgreSQL epoch
+				Calendar date = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+				date.clear();
+				date.set(2000, Calendar.JANUARY, 1);
+				date.add(Calendar.DAY_OF_MONTH, value.getInt());
+				return String.format("%04d-%02d-%02d", date.get(Calendar.YEAR), date.get(Calendar.MONTH) + 1, date.get(Calendar.DAY_OF_MONTH));
+			default:
+				byte[] text = new byte[length];
+				value.get(text);
+				return new String(text, Charset.forName("UTF-8"));
+		}
+	}//end decode
+}
@@ -0,0 +1,121 @@
+package edu.ucr.cs166.mechanicshop;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * This class writes one table of a snapshot.  A snapshot file starts with
+ * the table name and its column names and types, followed by row groups.
+ * Each row group stores its row count and then every column separately as
+ * a deflated block with the length and CRC32 of the uncompressed bytes.
+ * A row count of zero ends the file.
+ *
+ * An uncompressed column block is the sequence of its values in the
+ * PostgreSQL binary COPY field format (a four byte length, -1 for NULL,
+ * followed by the value in the type's binary send format), so restoring
+ * only has to interleave the columns back into rows.
+ *
+ */
+
+public class SnapshotWriter{
+	static final int MAGIC = 0x4d53534e;
+	static final int VERSION = 1;
+	//rows buffered before a row group is compressed and written
+	static final int ROWS_PER_GROUP = 65536;
+
+	private DataOutputStream _out;
+	private ByteArrayOutputStream[] _columns;
+	private DataOutputStream[] _columnData;
+	private int _rows = 0;
+
+	/**
+	 * Creates a snapshot file for a table.
+	 *
+	 * @param file the file to write
+	 * @param table the table name
+	 * @param columns the column names
+	 * @param types the column types, one of 'I' (int4), 'D' (date) or 'T' (text) per column
+	 * @throws java.io.IOException when the file cannot be written
+	 */
+	public SnapshotWriter(File file, String table, String[] columns, String types) throws IOException {
+		this._out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+		this._out.writeInt(MAGIC);
+		this._out.writeInt(VERSION);
+		this._out.writeUTF(table);
+		this._out.writeInt(columns.length);
+		for (int i = 0; i < columns.length; ++i){
+			this._out.writeUTF(columns[i]);
+			this._out.writeByte(types.charAt(i));
+		}//end for
+
+		this._columns = new ByteArrayOutputStream[columns.length];
+		this._columnData = new DataOutputStream[columns.length];
+		for (int i = 0; i < columns.length; ++i){
+			this._columns[i] = new ByteArrayOutputStream();
+			this._columnData[i] = new DataOutputStream(this._columns[i]);
+		}//end for
+	}
+
+	/**
+	 * Method to append a row.
+	 *
+	 * @param fields the binary value of every column, null for NULL
+	 * @throws java.io.IOException when the file cannot be written
+	 */
+	public void addRow(byte[][] fields) throws IOException {
+		for (int i = 0; i < fields.length; ++i){
+			if (fields[i] == null){
+				this._columnData[i].writeInt(-1);
+			}else{
+				this._columnData[i].writeInt(fields[i].length);
+				this._columnData[i].write(fields[i]);
+			}//end if
+		}//end for
+		if (++this._rows == ROWS_PER_GROUP) writeGroup();
+	}//end addRow
+
+	/**
+	 * Method to write the last row group and close the file.
+	 *
+	 * @throws java.io.IOException when the file cannot be written
+	 */
+	public void close() throws IOException {
+		if (this._rows > 0) writeGroup();
+		this._out.writeInt(0);
+		this._out.close();
+	}//end close
+
+	private void writeGroup() throws IOException {
+		this._out.writeInt(this._rows);
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		byte[] buffer = new byte[65536];
+		for (ByteArrayOutputStream column : this._columns){
+			byte[] raw = column.toByteArray();
+			CRC32 crc = new CRC32();
+			crc.update(raw);
+
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 4 + 64);
+			deflater.reset();
+			deflater.setInput(raw);
+			deflater.finish();
+			while (!deflater.finished()){
+				int n = deflater.deflate(buffer);
+				compressed.write(buffer, 0, n);
+			}//end while
+
+			this._out.writeInt(raw.length);
+			this._out.writeInt(compressed.size());
+			this._out.writeLong(crc.getValue());
+			compressed.writeTo(this._out);
+			column.reset();
+		}//end for
+		deflater.end();
+		this._rows = 0;
+	}//end writeGroup
+}
@@ -0,0 +1,194 @@
+package edu.ucr.cs166.mechanicshop;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class defines a Space-Saving heavy hitter summary.  It monitors at
+ * most capacity items; every item occurring more than N / capacity times is
+ * guaranteed to be monitored, and its count is overestimated by at most
+ * N / capacity.
+ *
+ * The counters are kept in a Stream-Summary: counters with the same count
+ * share a bucket, and the buckets form a list in ascending order of count.
+ * Incrementing a counter moves it to the neighbouring bucket and the
+ * counter to replace is always in the first bucket, so every add takes
+ * constant time.
+ *
+ */
+
+public class SpaceSaving{
+	private static class Bucket{
+		long count;
+		Bucket prev;
+		Bucket next;
+		Counter first;
+	}
+
+	private static class Counter{
+		String item;
+		Bucket bucket;
+		Counter prev;
+		Counter next;
+	}
+
+	private Map<String, Counter> _counters = new HashMap<String, Counter>();
+	//the buckets with the smallest and the largest count
+	private Bucket _min = null;
+	private Bucket _max = null;
+	private int _capacity;
+
+	public SpaceSaving(int capacity){
+		this._capacity = capacity;
+	}
+
+	public int getCapacity(){
+		return this._capacity;
+	}
+
+	/**
+	 * Method to add an occurrence of an item.  When the summary is full the
+	 * item with the smallest count is replaced and the new item inherits
+	 * that count.
+	 *
+	 * @param item the item seen
+	 */
+	public void add(String item){
+		Counter counter = this._counters.get(item);
+		if (counter != null){
+			increment(counter);
+			return;
+		}//end if
+		if (this._counters.size() < this._capacity){
+			counter = new Counter();
+			counter.item = item;
+			this._counters.put(item, counter);
+			attach(counter, this._min != null && this._min.count == 1 ? this._min : insertBucket(1, null));
+			return;
+		}//end if
+		counter = this._min.first;
+		this._counters.remove(counter.item);
+		counter.item = item;
+		this._counters.put(item, counter);
+		increment(counter);
+	}//end add
+
+	/**
+	 * Method to return the k monitored items with the highest counts.
+	 *
+	 * @param k the number of items to return
+	 * @return the items in descending order of their estimated count
+	 */
+	public List<String> top(int k){
+		List<String> result = new ArrayList<String>();
+		for (Bucket bucket = this._max; bucket != null && result.size() < k; bucket = bucket.prev){
+			for (Counter counter = bucket.first; counter != null && result.size() < k; counter = counter.next)
+				result.add(counter.item);
+		}//end for
+		return result;
+	}//end top
+
+	/**
+	 * Method to return the estimated count of a monitored item.
+	 *
+	 * @param item the item to look up
+	 * @return its count, or 0 if the item is not monitored
+	 */
+	public long count(String item){
+		Counter counter = this._counters.get(item);
+		return counter == null ? 0 : counter.bucket.count;
+	}//end count
+
+	/**
+	 * Method to save the summary, its counters in ascending order of count.
+	 *
+	 * @param out the stream to write to
+	 * @throws java.io.IOException when the stream cannot be written
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeInt(this._capacity);
+		out.writeInt(this._counters.size());
+		for (Bucket bucket = this._min; bucket != null; bucket = bucket.next){
+			for (Counter counter = bucket.first; counter != null; counter = counter.next){
+				out.writeUTF(counter.item);
+				out.writeLong(bucket.count);
+			}//end for
+		}//end for
+	}//end write
+
+	/**
+	 * Method to load a summary saved by write.
+	 *
+	 * @param in the stream to read from
+	 * @return the summary
+	 * @throws java.io.IOException when the stream is truncated or corrupt
+	 */
+	public static SpaceSaving read(DataInputStream in) throws IOException {
+		SpaceSaving summary = new SpaceSaving(in.readInt());
+		int size = in.readInt();
+		if (summary._capacity < 1 || size < 0 || size > summary._capacity)
+			throw new IOException("Bad Space-Saving size " + size + " of " + summary._capacity);
+		for (int i = 0; i < size; ++i){
+			String item = in.readUTF();
+			long count = in.readLong();
+			// ascending counts let every counter join the last bucket
+			Bucket last = summary._max;
+			if (count < 1 || (last != null && count < last.count) || summary._counters.containsKey(item))
+				throw new IOException("Bad Space-Saving counter " + item + " = " + count);
+			Counter counter = new Counter();
+			counter.item = item;
+			summary._counters.put(item, counter);
+			summary.attach(counter, last != null && last.count == count ? last : summary.insertBucket(count, last));
+		}//end for
+		return summary;
+	}//end read
+
+	// moves a counter to the bucket one count higher
+	private void increment(Counter counter){
+		Bucket bucket = counter.bucket;
+		long count = bucket.count + 1;
+		Bucket target = bucket.next != null && bucket.next.count == count ? bucket.next : insertBucket(count, bucket);
+		detach(counter);
+		attach(counter, target);
+	}//end increment
+
+	// links a new bucket after the given one, or first when it is null
+	private Bucket insertBucket(long count, Bucket prev){
+		Bucket bucket = new Bucket();
+		bucket.count = count;
+		bucket.prev = prev;
+		bucket.next = prev == null ? this._min : prev.next;
+		if (bucket.next != null) bucket.next.prev = bucket;
+		else this._max = bucket;
+		if (prev != null) prev.next = bucket;
+		else this._min = bucket;
+		return bucket;
+	}//end insertBucket
+
+	private void attach(Counter counter, Bucket bucket){
+		counter.bucket = bucket;
+		counter.prev = null;
+		counter.next = bucket.first;
+		if (bucket.first != null) bucket.first.prev = counter;
+		bucket.first = counter;
+	}//end attach
+
+	// unlinks a counter, and its bucket when that becomes empty
+	private void detach(Counter counter){
+		Bucket bucket = counter.bucket;
+		if (counter.prev != null) counter.prev.next = counter.next;
+		else bucket.first = counter.next;
+		if (counter.next != null) counter.next.prev = counter.prev;
+		if (bucket.first != null) return;
+
+		if (bucket.prev != null) bucket.prev.next = bucket.next;
+		else this._min = bucket.next;
+		if (bucket.next != null) bucket.next.prev = bucket.prev;
+		else this._max = bucket.prev;
+	}//end detach
+}
@@ -0,0 +1,57 @@
+package edu.ucr.cs166.mechanicshop;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the exact small-set mode and the switch to the registers.
+ */
+public class HyperLogLogTest{
+
+	@Test
+	public void countsSmallSetsExactly(){
+		HyperLogLog sketch = new HyperLogLog(10);
+		for (int round = 0; round < 3; ++round)
+			for (int i = 0; i < 100; ++i)
+				sketch.add("VIN" + i);
+		assertEquals(100, sketch.estimate());
+	}
+
+	@Test
+	public void estimatesLargeSetsWithTheRegisters(){
+		HyperLogLog sketch = new HyperLogLog(10);
+		int n = 50000;
+		for (int i = 0; i < n; ++i)
+			sketch.add("VIN" + i);
+		// four standard errors of 1.04 / sqrt(1024)
+		assertTrue(Math.abs(sketch.estimate() - n) < 0.13 * n, "estimate " + sketch.estimate());
+	}
+
+	@Test
+	public void loadsWhatItSaved() throws IOException {
+		for (int n : new int[] { 0, 20, 5000 }){
+			HyperLogLog sketch = new HyperLogLog(10);
+			for (int i = 0; i < n; ++i)
+				sketch.add("VIN" + i);
+			HyperLogLog loaded = roundTrip(sketch);
+			assertEquals(sketch.estimate(), loaded.estimate());
+			// the loaded sketch keeps counting from the saved state
+			sketch.add("VIN" + n);
+			loaded.add("VIN" + n);
+			assertEquals(sketch.estimate(), loaded.estimate());
+		}//end for
+	}
+
+	private static HyperLogLog roundTrip(HyperLogLog sketch) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		sketch.write(new DataOutputStream(bytes));
+		return HyperLogLog.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+	}
+}
@@ -0,0 +1,175 @@
+package edu.ucr.cs166.mechanicshop;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Exercises the intake ring buffer through many wraparounds, alone and
+ * with several producers racing the consumer, and checks that no caller
+ * is left waiting once the writer stops.
+ */
+public class IntakeQueueTest{
+
+	@Test
+	public void offersAndPollsInOrderAcrossWraparound(){
+		IntakeQueue.RingBuffer ring = new IntakeQueue.RingBuffer(4);
+		int next = 0;
+		int expected = 0;
+		for (int round = 0; round < 1000; ++round){
+			// alternates between filling the ring and leaving it partly full
+			int burst = round % 2 == 0 ? 4 : 3;
+			for (int i = 0; i < burst; ++i)
+				assertTrue(ring.offer(request(next++)));
+			if (burst == 4) assertFalse(ring.offer(request(-1)), "offer to a full ring");
+			assertEquals(burst, ring.size());
+
+			for (int i = 0; i < burst; ++i)
+				assertEquals(Integer.toString(expected++), ring.poll().sql);
+			assertNull(ring.poll());
+			assertEquals(0, ring.size());
+		}//end for
+	}
+
+	@Test
+	public void freesASlotForTheNextOffer(){
+		IntakeQueue.RingBuffer ring = new IntakeQueue.RingBuffer(2);
+		IntakeQueue.Request first = request(0);
+		assertTrue(ring.offer(first));
+		assertTrue(ring.offer(request(1)));
+		assertFalse(ring.offer(request(2)));
+		assertSame(first, ring.poll());
+		assertTrue(ring.offer(request(2)));
+		assertEquals("1", ring.poll().sql);
+		assertEquals("2", ring.poll().sql);
+	}
+
+	@Test
+	public void keepsEachProducersOrderUnderContention() throws InterruptedException {
+		final IntakeQueue.RingBuffer ring = new IntakeQueue.RingBuffer(8);
+		final int producers = 4;
+		final int perProducer = 100000;
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int p = 0; p < producers; ++p){
+			final int producer = p;
+			Thread thread = new Thread(new Runnable(){
+				public void run(){
+					for (int i = 0; i < perProducer; ++i){
+						IntakeQueue.Request request = request(producer * perProducer + i);
+						while (!ring.offer(request))
+							Thread.yield();
+					}//end for
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}//end for
+
+		int[] next = new int[producers];
+		for (int taken = 0; taken < producers * perProducer; ){
+			IntakeQueue.Request request = ring.poll();
+			if (request == null){
+				Thread.yield();
+				continue;
+			}//end if
+			int value = Integer.parseInt(request.sql);
+			int producer = value / perProducer;
+			assertEquals(next[producer]++, value % perProducer, "order of producer " + producer);
+			++taken;
+		}//end for
+		for (Thread thread : threads)
+			thread.join();
+		assertNull(ring.poll());
+	}
+
+	@Test
+	public void failsPendingWritesWhenTheWriterDies() throws Exception {
+		IntakeQueue queue = new IntakeQueue(new MechanicShop("none", "0", "none", ""), connection(true),
+			IntakeQueue.Durability.WAIT_FOR_COMMIT, 1, 4, 16);
+		// the first write kills the writer, the second finds it gone
+		AtomicInteger failed = new AtomicInteger();
+		for (int i = 0; i < 2; ++i)
+			awaitSubmitter(submitter(queue, 1, failed));
+		assertEquals(2, failed.get());
+		queue.close();
+	}
+
+	@Test
+	public void neverStrandsAWriteRacingClose() throws Exception {
+		for (int round = 0; round < 50; ++round){
+			IntakeQueue queue = new IntakeQueue(new MechanicShop("none", "0", "none", ""), connection(false),
+				IntakeQueue.Durability.WAIT_FOR_COMMIT, 2, 2, 4);
+			AtomicInteger failed = new AtomicInteger();
+			List<Thread> threads = new ArrayList<Thread>();
+			for (int p = 0; p < 4; ++p)
+				threads.add(submitter(queue, 1000, failed));
+			Thread.sleep(1);
+			queue.close();
+			for (Thread thread : threads)
+				awaitSubmitter(thread);
+		}//end for
+	}
+
+	// starts a thread submitting writes until one fails, counting that failure
+	private static Thread submitter(final IntakeQueue queue, final int writes, final AtomicInteger failed){
+		Thread thread = new Thread(new Runnable(){
+			public void run(){
+				try{
+					for (int i = 0; i < writes; ++i)
+						queue.submit("INSERT INTO Owns VALUES (" + i + ", 1, 'VIN" + i + "')");
+				}catch (SQLException e){
+					failed.incrementAndGet();
+				}//end try
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}//end submitter
+
+	private static void awaitSubmitter(Thread thread) throws InterruptedException {
+		thread.join(10000);
+		assertFalse(thread.isAlive(), "submitter still waiting for its write");
+	}//end awaitSubmitter
+
+	// a connection whose batches succeed, or kill the writer with an unchecked exception
+	private static Connection connection(final boolean broken){
+		final Statement statement = (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] { Statement.class },
+			new InvocationHandler(){
+				public Object invoke(Object proxy, Method method, Object[] args){
+					if (method.getName().equals("executeBatch")){
+						if (broken) throw new IllegalStateException("writer bug");
+						return new int[0];
+					}//end if
+					if (method.getName().equals("executeUpdate")) return 1;
+					return null;
+				}
+			});
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+			new InvocationHandler(){
+				public Object invoke(Object proxy, Method method, Object[] args){
+					if (method.getName().equals("createStatement")) return statement;
+					return null;
+				}
+			});
+	}//end connection
+
+	private static IntakeQueue.Request request(int id){
+		IntakeQueue.Request request = new IntakeQueue.Request();
+		request.sql = Integer.toString(id);
+		return request;
+	}//end request
+}
@@ -0,0 +1,107 @@
+package edu.ucr.cs166.mechanicshop;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks version based invalidation, LRU eviction under the byte bound and
+ * the counters the cache reports.
+ */
+public class ReportCacheTest{
+	// one record of one 100 character value: 64 + 48 + 48 + 200 bytes
+	private static final long RESULT_BYTES = 360;
+
+	@Test
+	public void servesAnEntryUntilOneOfItsTablesChanges(){
+		ReportCache cache = new ReportCache(1 << 20);
+		String[] tables = {"Customer", "Owns"};
+		List<List<String>> result = result("a");
+		cache.put("report 7", result, tables, cache.getVersions(tables));
+		assertSame(result, cache.get("report 7"));
+
+		// names are case insensitive, as in table_changed notifications
+		cache.bumpVersion("mechanic");
+		assertSame(result, cache.get("report 7"));
+		cache.bumpVersion("owns");
+		assertNull(cache.get("report 7"));
+		assertNull(cache.get("report 7"));
+		assertStats(cache, "hits 2, misses 2", "invalidations 1, evictions 0");
+	}
+
+	@Test
+	public void dropsAResultComputedBeforeARacingWrite(){
+		ReportCache cache = new ReportCache(1 << 20);
+		String[] tables = {"Service_Request"};
+		// versions taken before the query, then a write lands while it runs
+		long[] versions = cache.getVersions(tables);
+		cache.bumpVersion("Service_Request");
+		cache.put("report 9", result("b"), tables, versions);
+		assertNull(cache.get("report 9"));
+		assertStats(cache, "hits 0, misses 1", "invalidations 1");
+	}
+
+	@Test
+	public void evictsTheLeastRecentlyUsedEntries(){
+		ReportCache cache = new ReportCache(3 * RESULT_BYTES);
+		String[] tables = {"Car"};
+		for (String key : Arrays.asList("a", "b", "c"))
+			cache.put(key, result(key), tables, cache.getVersions(tables));
+		// a becomes the most recently used, so b goes first
+		assertNotNull(cache.get("a"));
+		cache.put("d", result("d"), tables, cache.getVersions(tables));
+
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("a"));
+		assertNotNull(cache.get("c"));
+		assertNotNull(cache.get("d"));
+		assertStats(cache, "3 entries, " + 3 * RESULT_BYTES + "/" + 3 * RESULT_BYTES + " bytes", "evictions 1");
+	}
+
+	@Test
+	public void replacingAnEntryFreesItsBytes(){
+		ReportCache cache = new ReportCache(2 * RESULT_BYTES);
+		String[] tables = {"Car"};
+		cache.put("a", result("a"), tables, cache.getVersions(tables));
+		cache.put("a", result("a"), tables, cache.getVersions(tables));
+		cache.put("b", result("b"), tables, cache.getVersions(tables));
+		assertNotNull(cache.get("a"));
+		assertNotNull(cache.get("b"));
+		assertStats(cache, "2 entries, " + 2 * RESULT_BYTES + "/", "evictions 0");
+	}
+
+	@Test
+	public void rejectsAnEntryLargerThanTheBound(){
+		ReportCache cache = new ReportCache(RESULT_BYTES);
+		String[] tables = {"Car"};
+		cache.put("small", result("s"), tables, cache.getVersions(tables));
+		List<List<String>> large = result("l");
+		large.add(large.get(0));
+		cache.put("large", large, tables, cache.getVersions(tables));
+
+		assertNull(cache.get("large"));
+		// the oversized entry did not push out what was cached
+		assertNotNull(cache.get("small"));
+		assertStats(cache, "1 entries, " + RESULT_BYTES + "/", "evictions 0");
+	}
+
+	private static List<List<String>> result(String key){
+		char[] value = new char[100];
+		Arrays.fill(value, key.charAt(0));
+		List<List<String>> result = new ArrayList<List<String>>();
+		result.add(Arrays.asList(new String(value)));
+		return result;
+	}//end result
+
+	private static void assertStats(ReportCache cache, String... parts){
+		String stats = cache.getStats();
+		for (String part : parts)
+			assertTrue(stats.contains(part), stats);
+	}//end assertStats
+}
@@ -0,0 +1,123 @@
+package edu.ucr.cs166.mechanicshop;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Round trips rows through SnapshotWriter and SnapshotReader and compares
+ * the binary COPY fields that come back byte for byte.
+ */
+public class SnapshotTest{
+	private static final String[] COLUMNS = {"rid", "date", "complain"};
+	private static final String TYPES = "IDT";
+
+	@TempDir
+	File _dir;
+
+	@Test
+	public void roundTripsEveryFieldAcrossRowGroups() throws IOException {
+		// one full row group plus a partial one
+		List<byte[][]> rows = rows(SnapshotWriter.ROWS_PER_GROUP + 1000);
+		File file = write(rows);
+
+		SnapshotReader reader = new SnapshotReader(file);
+		assertEquals("Service_Request", reader.getTableName());
+		assertArrayEquals(COLUMNS, reader.getColumnNames());
+		assertEquals(TYPES, reader.getColumnTypes());
+
+		int next = 0;
+		int groups = 0;
+		for (byte[][] columns = reader.nextColumns(); columns != null; columns = reader.nextColumns()){
+			++groups;
+			ByteBuffer[] fields = new ByteBuffer[columns.length];
+			for (int i = 0; i < columns.length; ++i)
+				fields[i] = ByteBuffer.wrap(columns[i]);
+			for (int r = 0; r < reader.getGroupRowCount(); ++r, ++next){
+				byte[][] expected = rows.get(next);
+				for (int i = 0; i < columns.length; ++i)
+					assertArrayEquals(expected[i], field(fields[i]), "row " + next + " column " + COLUMNS[i]);
+			}//end for
+		}//end for
+		reader.close();
+
+		assertEquals(2, groups);
+		assertEquals(rows.size(), next);
+	}
+
+	@Test
+	public void decodesRowsTheWayJdbcPrintsThem() throws IOException {
+		List<byte[][]> rows = new ArrayList<byte[][]>();
+		// 2017-03-05 is 6273 days after 2000-01-01
+		rows.add(new byte[][]{ int4(7), int4(6273), "flat tire".getBytes(StandardCharsets.UTF_8) });
+		rows.add(new byte[][]{ int4(8), null, null });
+
+		SnapshotReader reader = new SnapshotReader(write(rows));
+		List<List<String>> records = reader.nextRows();
+		assertEquals(Arrays.asList("7", "2017-03-05", "flat tire"), records.get(0));
+		assertEquals(Arrays.asList("8", null, null), records.get(1));
+		assertNull(reader.nextRows());
+		reader.close();
+	}
+
+	@Test
+	public void rejectsACorruptColumnBlock() throws IOException {
+		File file = write(rows(1000));
+		RandomAccessFile raw = new RandomAccessFile(file, "rw");
+		// flips a byte near the end of the last column block, before the end marker
+		long position = raw.length() - 8;
+		raw.seek(position);
+		int b = raw.read();
+		raw.seek(position);
+		raw.write(b ^ 0xff);
+		raw.close();
+
+		SnapshotReader reader = new SnapshotReader(file);
+		assertThrows(IOException.class, reader::nextColumns);
+		reader.close();
+	}
+
+	private File write(List<byte[][]> rows) throws IOException {
+		File file = new File(this._dir, "service_request.snap");
+		SnapshotWriter writer = new SnapshotWriter(file, "Service_Request", COLUMNS, TYPES);
+		for (byte[][] row : rows)
+			writer.addRow(row);
+		writer.close();
+		return file;
+	}//end write
+
+	private static List<byte[][]> rows(int count){
+		List<byte[][]> rows = new ArrayList<byte[][]>();
+		for (int r = 0; r < count; ++r){
+			byte[] date = r % 17 == 0 ? null : int4(6000 + r % 400);
+			byte[] complain = r % 13 == 0 ? null : ("complaint " + r * 31 % 977).getBytes(StandardCharsets.UTF_8);
+			rows.add(new byte[][]{ int4(r), date, complain });
+		}//end for
+		return rows;
+	}//end rows
+
+	private static byte[] int4(int value){
+		return ByteBuffer.allocate(4).putInt(value).array();
+	}
+
+	// reads one binary COPY field, null for NULL
+	private static byte[] field(ByteBuffer fields){
+		int length = fields.getInt();
+		if (length < 0) return null;
+		byte[] value = new byte[length];
+		fields.get(value);
+		return value;
+	}//end field
+}
@@ -0,0 +1,93 @@
+package edu.ucr.cs166.mechanicshop;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the Stream-Summary against exact counts of a skewed stream.
+ */
+public class SpaceSavingTest{
+
+	@Test
+	public void keepsTheSpaceSavingGuarantees(){
+		int capacity = 64;
+		int n = 200000;
+		SpaceSaving summary = new SpaceSaving(capacity);
+		Map<String, Long> exact = new HashMap<String, Long>();
+		Random random = new Random(42);
+		for (int i = 0; i < n; ++i){
+			// a few heavy hitters over a long tail
+			String item = "VIN" + (random.nextInt(4) == 0 ? random.nextInt(8) : random.nextInt(5000));
+			summary.add(item);
+			Long count = exact.get(item);
+			exact.put(item, count == null ? 1 : count + 1);
+		}//end for
+
+		List<String> monitored = summary.top(Integer.MAX_VALUE);
+		assertEquals(capacity, monitored.size());
+		// a full summary's counts always add up to the stream length
+		long total = 0;
+		for (String item : monitored){
+			long estimate = summary.count(item);
+			long count = exact.get(item);
+			assertTrue(estimate >= count && estimate <= count + n / capacity, item);
+			total += estimate;
+		}//end for
+		assertEquals(n, total);
+		for (Map.Entry<String, Long> entry : exact.entrySet()){
+			if (entry.getValue() > n / capacity)
+				assertTrue(summary.count(entry.getKey()) > 0, entry.getKey() + " is not monitored");
+		}//end for
+	}
+
+	@Test
+	public void loadsWhatItSaved() throws IOException {
+		SpaceSaving summary = new SpaceSaving(32);
+		Random random = new Random(7);
+		for (int i = 0; i < 10000; ++i)
+			summary.add("VIN" + random.nextInt(100));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		summary.write(new DataOutputStream(bytes));
+		SpaceSaving loaded = SpaceSaving.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+		List<String> items = summary.top(32);
+		assertEquals(items.size(), loaded.top(32).size());
+		for (String item : items)
+			assertEquals(summary.count(item), loaded.count(item), item);
+		// the loaded summary keeps counting from the saved state
+		summary.add("VIN1000");
+		loaded.add("VIN1000");
+		assertEquals(summary.count("VIN1000"), loaded.count("VIN1000"));
+	}
+
+	@Test
+	public void listsTheTopItemsInDescendingOrder(){
+		SpaceSaving summary = new SpaceSaving(16);
+		for (int item = 0; item < 10; ++item)
+			for (int i = 0; i <= item; ++i)
+				summary.add("VIN" + item);
+
+		List<String> top = summary.top(3);
+		assertEquals(3, top.size());
+		assertEquals("VIN9", top.get(0));
+		assertEquals("VIN8", top.get(1));
+		assertEquals("VIN7", top.get(2));
+
+		List<String> all = summary.top(100);
+		assertEquals(10, all.size());
+		for (int i = 1; i < all.size(); ++i)
+			assertTrue(summary.count(all.get(i - 1)) >= summary.count(all.get(i)));
+	}
+}
@@ -1,7 +1,15 @@
 #! /bin/bash
-DBNAME=$ryuzu001_DB
-PORT=$9998
-USER=$ryuzu001
+# Example: ./run.sh flightDB 5432 user [replica port ...]
+# Without arguments connects to the database created by createPostgreDB.sh
+if [ $# -eq 0 ]; then
+	set -- $USER"_DB" ${PGPORT:-9998} $USER
+fi
 
-# Example: source ./run.sh flightDB 5432 user
-java -cp lib/*:bin/ MechanicShop $DBNAME $PORT $USER
+# the archive written by compile.sh only matches the jar path and flags it was
+# trained with; the C1-only JIT and serial GC shorten startup of short sessions
+cd "$(dirname "$0")/cli/target"
+CDS=""
+if [ -f mechanicshop.jsa ]; then
+	CDS="-XX:SharedArchiveFile=mechanicshop.jsa"
+fi
+exec java $CDS -XX:TieredStopAtLevel=1 -XX:+UseSerialGC -jar mechanicshop.jar "$@"
@@ -0,0 +1,15 @@
+#! /bin/bash
+# Creates the database and loads it from a snapshot instead of parsing the
+# csv files. Write the snapshot with
+# java -cp ../java/cli/target/mechanicshop.jar edu.ucr.cs166.mechanicshop.Snapshot export <dir> <dbname> <port> <user>
+# Example: ./createPostgreDBFromSnapshot.sh /tmp/$USER/snapshot
+SNAPSHOT=$1
+echo "creating db named ... "$USER"_DB"
+createdb -h localhost -p $PGPORT $USER"_DB"
+pg_ctl status
+
+echo "Initializing tables .. "
+psql -h localhost -p $PGPORT $USER"_DB" < ../sql/create.sql
+
+echo "Restoring snapshot ... "$SNAPSHOT
+java -cp ../java/cli/target/mechanicshop.jar edu.ucr.cs166.mechanicshop.Snapshot restore $SNAPSHOT $USER"_DB" $PGPORT $USER
@@ -20,7 +20,14 @@ sleep 1
 initdb
 
 sleep 1
+#Group commit across desk processes: a commit waits COMMIT_DELAY microseconds
+#for other desks to share its WAL flush when COMMIT_SIBLINGS other transactions
+#are open. Off by default; it only helps with several cores and a slow disk.
+#Example: COMMIT_DELAY=1000 COMMIT_SIBLINGS=2 ./startPostgreSQL.sh
+COMMIT_DELAY=${COMMIT_DELAY:-0}
+COMMIT_SIBLINGS=${COMMIT_SIBLINGS:-5}
+
 #Start folder
 export PGPORT=9998
-pg_ctl -o "-c unix_socket_directories=$PGSOCKETS -p $PGPORT" -D $PGDATA -l $folder/logfile start
+pg_ctl -o "-c unix_socket_directories=$PGSOCKETS -p $PGPORT -c commit_delay=$COMMIT_DELAY -c commit_siblings=$COMMIT_SIBLINGS" -D $PGDATA -l $folder/logfile start
 
@@ -0,0 +1,24 @@
+#! /bin/bash
+# Starts a hot standby streaming from the primary started by startPostgreSQL.sh.
+# Example: ./startStandbyPostgreSQL.sh 9998 9999
+PRIMARY_PORT=${1:-9998}
+STANDBY_PORT=${2:-9999}
+folder=/tmp/$USER/standby
+export PGDATA=$folder/myDB/data
+export PGSOCKETS=$folder/myDB/sockets
+
+echo $folder
+
+#Clear folder
+rm -rf $folder
+
+#Initialize folders
+mkdir -p $folder/myDB/sockets
+sleep 1
+
+#Clone the primary and write the standby configuration (-R)
+pg_basebackup -h localhost -p $PRIMARY_PORT -D $PGDATA -R -X stream
+
+sleep 1
+#Start folder
+pg_ctl -o "-c unix_socket_directories=$PGSOCKETS -p $STANDBY_PORT -c hot_standby=on" -D $PGDATA -l $folder/logfile start
@@ -87,64 +87,30 @@ CREATE TABLE Closed_Request
 	FOREIGN KEY (mid) REFERENCES Mechanic(id)
 );
 
-----------------------------
--- INSERT DATA STATEMENTS --
-----------------------------
+--------------
+---TRIGGERS---
+--------------
+-- Tell listening clients (MechanicShop's report cache) which table changed,
+-- and which was truncated (its approximate report sketches).
+CREATE OR REPLACE FUNCTION notify_table_changed() RETURNS trigger AS $$
+BEGIN
+	PERFORM pg_notify('table_changed', lower(TG_TABLE_NAME));
+	IF TG_OP = 'TRUNCATE' THEN
+		PERFORM pg_notify('table_truncated', lower(TG_TABLE_NAME));
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
 
-COPY Customer (
-	id,
-	fname,
-	lname,
-	phone,
-	address
-)
-FROM 'customer.csv'
-WITH DELIMITER ',';
-
-COPY Mechanic (
-	id,
-	fname,
-	lname,
-	experience
-)
-FROM 'mechanic.csv'
-WITH DELIMITER ',';
-
-COPY Car (
-	vin,
-	make,
-	model,
-	year
-)
-FROM 'car.csv'
-WITH DELIMITER ',';
-
-COPY Owns (
-	ownership_id,
-	customer_id,
-	car_vin
-)
-FROM 'owns.csv'
-WITH DELIMITER ',';
-
-COPY Service_Request (
-	rid,
-	customer_id,
-	car_vin,
-	date,
-	odometer,
-	complain
-)
-FROM 'service_request.csv'
-WITH DELIMITER ',';
-
-COPY Closed_Request (
-	wid,
-	rid,
-	mid,
-	date,
-	comment,
-	bill
-)
-FROM 'closed_request.csv'
-WITH DELIMITER ',';
\ No newline at end of file
+CREATE TRIGGER customer_changed AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON Customer
+	FOR EACH STATEMENT EXECUTE PROCEDURE notify_table_changed();
+CREATE TRIGGER mechanic_changed AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON Mechanic
+	FOR EACH STATEMENT EXECUTE PROCEDURE notify_table_changed();
+CREATE TRIGGER car_changed AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON Car
+	FOR EACH STATEMENT EXECUTE PROCEDURE notify_table_changed();
+CREATE TRIGGER owns_changed AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON Owns
+	FOR EACH STATEMENT EXECUTE PROCEDURE notify_table_changed();
+CREATE TRIGGER service_request_changed AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON Service_Request
+	FOR EACH STATEMENT EXECUTE PROCEDURE notify_table_changed();
+CREATE TRIGGER closed_request_changed AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON Closed_Request
+	FOR EACH STATEMENT EXECUTE PROCEDURE notify_table_changed();